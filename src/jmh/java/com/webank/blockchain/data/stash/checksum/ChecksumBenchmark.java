@@ -0,0 +1,82 @@
+package com.webank.blockchain.data.stash.checksum;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.webank.blockchain.data.stash.utils.CRC32Util;
+
+/**
+ * Block checksum of CRC32Util versus the checksum engines. Run with ./gradlew jmh
+ *
+ * @Description
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({ "2048", "65536", "1048576" })
+    private int blockSize;
+
+    private byte[] block;
+    private ByteBuffer mappedLike;
+    private BlockChecksum crc32 = new Crc32Checksum();
+    private BlockChecksum crc32c = new Crc32cChecksum();
+
+    @Setup
+    public void setup() {
+        //Block body plus the crc32, as a frame read from a binlog
+        block = new byte[blockSize + 4];
+        new Random(1).nextBytes(block);
+        ByteBuffer direct = ByteBuffer.allocateDirect(block.length);
+        direct.put(block).flip();
+        direct.limit(blockSize);
+        //A read only direct slice, what the mapped binlog reader hands out
+        mappedLike = direct.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * The path before the checksum engine, copy the body then run the table driven loop.
+     */
+    @Benchmark
+    public long crc32UtilCopy() {
+        return CRC32Util.getCrc32(Arrays.copyOfRange(block, 0, blockSize));
+    }
+
+    @Benchmark
+    public long crc32Util() {
+        return CRC32Util.getCrc32(block, 0, blockSize);
+    }
+
+    @Benchmark
+    public long crc32Array() {
+        return crc32.checksum(block, 0, blockSize);
+    }
+
+    @Benchmark
+    public long crc32MappedSlice() {
+        return crc32.checksum(mappedLike);
+    }
+
+    @Benchmark
+    public long crc32cMappedSlice() {
+        return crc32c.checksum(mappedLike);
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * BlockChecksum
+ *
+ * @Description: Checksum of a binlog block body, compared with the 4 bytes stored after the body.
+ *
+ */
+public interface BlockChecksum {
+
+    public long checksum(byte[] data, int offset, int length);
+
+    /**
+     * Checksum of the remaining bytes, the position of the buffer is not changed.
+     */
+    public long checksum(ByteBuffer data);
+}
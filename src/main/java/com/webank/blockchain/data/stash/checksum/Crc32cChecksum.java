@@ -0,0 +1,41 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.checksum;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Crc32cChecksum
+ *
+ * @Description: Crc32c (Castagnoli) for binlog formats which use it. java.util.zip.CRC32C needs Java 9, so Guava is
+ *               used while the project targets Java 8.
+ *
+ */
+public class Crc32cChecksum implements BlockChecksum {
+
+    private static final HashFunction CRC32C = Hashing.crc32c();
+
+    @Override
+    public long checksum(byte[] data, int offset, int length) {
+        return CRC32C.hashBytes(data, offset, length).asInt() & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public long checksum(ByteBuffer data) {
+        return CRC32C.newHasher(data.remaining()).putBytes(data.duplicate()).hash().asInt() & 0xFFFFFFFFL;
+    }
+}
@@ -33,5 +33,24 @@ public class ReadPropertyConfig {
     private int files = 3;
     private String clean = "yes";
     private String backupSuffix = "ok";
+    private String concurrentDownload = "no";
+    private int downloadThreads = 3;
+    private String prefetch = "no";
+    private int prefetchWindow = 3;
+    private long prefetchInterval = 5000;
+    private int downloadSegments = 1;
+    private long segmentThreshold = 64 * 1024 * 1024;
+    private String tail = "no";
+    private long tailInterval = 500;
+    private long tailIdleTimeout = 60000;
+    private long pollMinInterval = 500;
+    private long pollMaxInterval = 30000;
+    private String parallelRead = "no";
+    private int readAhead = 64;
+    private String lazyParse = "no";
+    private String parallelParse = "no";
+    private int parseThreads = 4;
+    private int parallelParseThreshold = 32;
+    private long bufferPoolSize = 64 * 1024 * 1024;
 
 }
@@ -16,11 +16,17 @@ package com.webank.blockchain.data.stash.config;
 import java.io.File;
 import java.util.List;
 
+import com.webank.blockchain.data.stash.checksum.BlockChecksum;
+import com.webank.blockchain.data.stash.checksum.Crc32Checksum;
+import com.webank.blockchain.data.stash.checksum.Crc32cChecksum;
+import com.webank.blockchain.data.stash.constants.ChecksumConstants;
 import com.webank.blockchain.data.stash.crypto.CyptoInterface;
 import com.webank.blockchain.data.stash.db.face.DataStorage;
 import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
 import com.webank.blockchain.data.stash.enums.DataStashExceptionCodeEnums;
 import com.webank.blockchain.data.stash.exception.DataStashException;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+import com.webank.blockchain.data.stash.read.BlockBufferPool;
 import com.webank.blockchain.data.stash.store.DBDataStorage;
 import com.webank.blockchain.data.stash.constants.CyptoConstants;
 import com.webank.blockchain.data.stash.crypto.StandardCryptoService;
@@ -47,6 +53,8 @@ public class SysBeanConfig {
 
     @Autowired
     private SystemPropertyConfig systemPropertyConfig;
+    @Autowired
+    private ReadPropertyConfig readPropertyConfig;
 
     @Bean
     public DataStorage initDataStorage() throws DataStashException {
@@ -80,6 +88,16 @@ public class SysBeanConfig {
         return list;
     }
 
+    @Bean
+    public BinlogFileCatalog binlogFileCatalog() {
+        return new BinlogFileCatalog(systemPropertyConfig.getBinlogSuffix());
+    }
+
+    @Bean
+    public BlockBufferPool blockBufferPool() {
+        return new BlockBufferPool(readPropertyConfig.getBufferPoolSize());
+    }
+
     @Bean
     public CyptoInterface cyptoInterfaceBean() throws DataStashException {
         int encryptType = systemPropertyConfig.getEncryptType();
@@ -93,4 +111,17 @@ public class SysBeanConfig {
         }
     }
 
+    @Bean
+    public BlockChecksum blockChecksumBean() throws DataStashException {
+        int checksumType = systemPropertyConfig.getChecksumType();
+        switch (checksumType) {
+            case ChecksumConstants.CRC32:
+                return new Crc32Checksum();
+            case ChecksumConstants.CRC32C:
+                return new Crc32cChecksum();
+            default:
+                throw new DataStashException(DataStashExceptionCodeEnums.DATA_STASH_CHECKSUM_TYPE);
+        }
+    }
+
 }
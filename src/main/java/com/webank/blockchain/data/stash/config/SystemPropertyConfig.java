@@ -43,9 +43,37 @@ public class SystemPropertyConfig {
 
     private int batchCount = 5;
     private int encryptType = 0;
+    private int checksumType = 0;
 
     private int sqlThreads = 50;
     private int sqlQueueSize = 500;
+    private int tableLanes = 0;
+    private int snapshotThreads = 4;
+    private int jdbcWriter = 0;
+    private int jdbcBatchSize = 1000;
+    private int groupCommit = 0;
+    private int groupCommitBlocks = 100;
+    private int groupCommitRows = 20000;
+    private long groupCommitMillis = 200;
+    private int bulkCatchUp = 0;
+    private long bulkLoadBytes = 64 * 1024 * 1024;
+    private int bulkCatchUpDistance = 10000;
+
+    private int pipeline = 0;
+    private int parseWorkers = 4;
+    private int parseQueueSize = 64;
+    private int storeQueueSize = 256;
+    private long inFlightBytes = 256 * 1024 * 1024;
+
+    private int verifySampling = 0;
+    private int verifyInterval = 100;
+    private double verifySampleRate = 0.01;
+    private int verifyWindow = 1000;
+    private int verifyQuorum = 0;
+
+    private int selectPrimary = 0;
+    private int sourceMaxErrors = 3;
+    private int sourceLagThreshold = 1000;
 
 
     public String getLocalBinlogPath() {
@@ -0,0 +1,11 @@
+package com.webank.blockchain.data.stash.constants;
+
+/**
+ * @Description Checksum algorithms of binlog blocks
+ */
+public class ChecksumConstants {
+
+    public static final int CRC32 = 0;
+    public static final int CRC32C = 1;
+
+}
@@ -57,5 +57,10 @@ public interface SysTablesInfoMapper extends BaseMapper {
     
     List<Map<String, Object>> selectDataForTopBlock(@Param("tableName")String tableName);
 
+    List<String> selectColumns(@Param("tableName")String tableName);
+
+    int upsertTopBlock(@Param("tableName")String tableName, @Param("detailTableName")String detailTableName,
+            @Param("fields")String fields, @Param("updates")String updates);
+
     void rollbackTableFromBlock( @Param("tableName")String tableName, @Param("blockNum")Long blockNum);
 }
\ No newline at end of file
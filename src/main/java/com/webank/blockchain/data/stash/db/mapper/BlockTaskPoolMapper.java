@@ -14,6 +14,7 @@
 package com.webank.blockchain.data.stash.db.mapper;
 
 import java.util.Date;
+import java.util.List;
 
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
@@ -48,6 +49,12 @@ public interface BlockTaskPoolMapper {
             + "values(#{blockHeight}, #{certainty}, #{blockTime}, #{updatetime}, #{syncStatus})")
     int insertInto(BlockTaskPool blockTaskPool);
 
+    @Insert("<script>insert into block_task_pool(block_height, certainty ,block_timestamp, updatetime, sync_status)\n"
+            + "values <foreach collection='list' item='b' separator=','>(#{b.blockHeight}, #{b.certainty}, "
+            + "#{b.blockTime}, #{b.updatetime}, #{b.syncStatus})</foreach>\n"
+            + "on duplicate key update sync_status=values(sync_status), updatetime=values(updatetime)</script>")
+    int insertOrUpdateBatch(@Param("list") List<BlockTaskPool> blockTaskPools);
+
     @Select("SELECT * FROM block_task_pool WHERE block_height = #{blockHeight}")
     @Results({ @Result(property = "pkId", column = "pk_id"), @Result(property = "blockHeight", column = "block_height"),
             @Result(property = "binlogName", column = "binlog_name"),
@@ -78,6 +85,11 @@ public interface BlockTaskPoolMapper {
     @Update("update block_task_pool set sync_status=#{sync_status} where block_height=#{block_height}")
     void updateSyncStatusByBlockHeight(@Param("sync_status") int syncStatus, @Param("block_height") long blockHeight);
 
+    @Update("update block_task_pool set sync_status=#{sync_status}\n"
+            + "where block_height >= #{from} and block_height < #{to}")
+    void updateSyncStatusByBlockRange(@Param("sync_status") int syncStatus, @Param("from") long from,
+            @Param("to") long to);
+
     @Update("delete from block_task_pool where block_height >= #{block}")
     int rollbackByBlockNumber(@Param("block") long block);
 
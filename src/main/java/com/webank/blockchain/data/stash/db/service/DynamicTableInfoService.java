@@ -19,6 +19,8 @@ import java.util.List;
 import com.webank.blockchain.data.stash.db.dao.DynamicTableInfoMapper;
 import com.webank.blockchain.data.stash.db.face.StorageService;
 import com.webank.blockchain.data.stash.db.model.DynamicTableInfo;
+import com.webank.blockchain.data.stash.store.BulkLoadWriter;
+import com.webank.blockchain.data.stash.store.JdbcBatchWriter;
 import com.webank.blockchain.data.stash.utils.SQLUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -50,11 +52,29 @@ public class DynamicTableInfoService extends DBBaseOperation implements StorageS
 	
 	@Autowired
     private SystemPropertyConfig systemPropertyConfig;
+
+    @Autowired
+    private JdbcBatchWriter batchWriter;
+
+    @Autowired
+    private BulkLoadWriter bulkLoadWriter;
     
     @SuppressWarnings("unchecked")
     @Override
     @Transactional
     public void storeTableData(String tableName, TableDataInfo tableDataInfo) throws DataStashException {
+        if (bulkLoadWriter.isActive()) {
+            //Catch-up, the detail rows are buffered and loaded in bulk, the current table is rebuilt afterwards
+            bulkLoadWriter.append(tableName, tableDataInfo.getDirtyEntrys());
+            bulkLoadWriter.append(tableName, tableDataInfo.getNewEntrys());
+            return;
+        }
+        if (systemPropertyConfig.getJdbcWriter() == 1) {
+            //Bind the entries directly, no sql text is built per row
+            batchWriter.write(tableName, tableDataInfo.getDirtyEntrys());
+            batchWriter.write(tableName, tableDataInfo.getNewEntrys());
+            return;
+        }
         storage(tableName, tableDataInfo, DynamicTableInfo.class);
     }       
 
@@ -114,7 +134,7 @@ public class DynamicTableInfoService extends DBBaseOperation implements StorageS
     public void save(String tableName, DynamicTableInfo record){
         mapper.insertOrUpdate(SQLUtil.convertStr(tableName), record);
     }
-    
+
     public void checkTable(String tableName){
         mapper.existTable(tableName);
     }
@@ -143,6 +143,30 @@ public class SysTablesInfoService extends DBBaseOperation implements StorageServ
     public List<Map<String, Object>> selectDataForTopBlock(String tableName){
         return mapper.selectDataForTopBlock(tableName);
     }
+
+    /**
+     * Upsert the rows of the top block of the detail table into the current table with one statement.
+     *
+     * @return rows affected, or -1 if the table doesn't exist
+     */
+    public int recoverTopBlock(String tableName){
+        List<String> columns = mapper.selectColumns(tableName);
+        if (columns.isEmpty()) {
+            return -1;
+        }
+        StringBuilder fields = new StringBuilder();
+        StringBuilder updates = new StringBuilder();
+        for (String column : columns) {
+            if (fields.length() > 0) {
+                fields.append(",");
+                updates.append(",");
+            }
+            fields.append("`").append(column).append("`");
+            updates.append("`").append(column).append("`=VALUES(`").append(column).append("`)");
+        }
+        return mapper.upsertTopBlock(tableName, CommonUtil.getDetailTableName(tableName), fields.toString(),
+                updates.toString());
+    }
     
     public void deleteById(String tableName, long id){
         mapper.deleteByPrimaryKey(tableName, id);
@@ -13,6 +13,10 @@
  */
 package com.webank.blockchain.data.stash.entity;
 
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -20,7 +24,8 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Entity
  *
- * @Description: Entity
+ * @Description: Entity. A column parsed lazily is a view of its value bytes in the block, the value string or
+ *               its hex form is decoded only when it's read.
  * @author graysonzhang
  * @author maojiayu
  * @data 2019-07-31 11:44:50
@@ -29,12 +34,99 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ColumnInfo implements Comparable<ColumnInfo> {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     @Setter
     @Getter
     private String columnName;
-    @Setter
-    @Getter
     private String columnValue;
+    private ByteBuffer block;
+    private int offset;
+    private int length;
+    @Getter
+    private boolean binary;
+
+    public ColumnInfo() {
+    }
+
+    public ColumnInfo(String columnName, ByteBuffer block, int offset, int length) {
+        this.columnName = columnName;
+        this.block = block;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public String getColumnValue() {
+        if (columnValue == null && block != null) {
+            columnValue = binary ? encodeHex() : new String(rawBytes());
+        }
+        return columnValue;
+    }
+
+    public void setColumnValue(String columnValue) {
+        this.columnValue = columnValue;
+        this.block = null;
+    }
+
+    /**
+     * Binary values are read as hex string.
+     */
+    public void setBinary(boolean binary) {
+        if (block != null) {
+            this.columnValue = null;
+        }
+        this.binary = binary;
+    }
+
+    /**
+     * @return true if the value starts with 0x, checked on the raw bytes without decoding
+     */
+    public boolean hasHexPrefix() {
+        if (block == null) {
+            return columnValue != null && columnValue.length() >= 2 && columnValue.charAt(0) == '0'
+                    && (columnValue.charAt(1) == 'x' || columnValue.charAt(1) == 'X');
+        }
+        return length >= 2 && block.get(offset) == '0' && (block.get(offset + 1) | 0x20) == 'x';
+    }
+
+    /**
+     * Decode the value and release the block.
+     */
+    public ColumnInfo materialize() {
+        getColumnValue();
+        block = null;
+        return this;
+    }
+
+    /**
+     * Set the value as a statement parameter. A text value still in the block is passed as bytes, without decoding
+     * it to a string first.
+     */
+    public void bind(PreparedStatement ps, int parameterIndex) throws SQLException {
+        if (columnValue == null && block != null && !binary) {
+            ps.setBytes(parameterIndex, rawBytes());
+        } else {
+            ps.setString(parameterIndex, getColumnValue());
+        }
+    }
+
+    private byte[] rawBytes() {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = block.get(offset + i);
+        }
+        return b;
+    }
+
+    private String encodeHex() {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int v = block.get(offset + i) & 0xFF;
+            hex[i * 2] = HEX_DIGITS[v >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[v & 0x0F];
+        }
+        return new String(hex);
+    }
 
     @Override
     public boolean equals(Object obj) {
@@ -44,11 +136,11 @@ public class ColumnInfo implements Comparable<ColumnInfo> {
             return false;
         final ColumnInfo columnInfo = (ColumnInfo) obj;
         if (this.columnName.equals(columnInfo.getColumnName())
-                && this.columnValue.equals(columnInfo.getColumnValue())) {
+                && this.getColumnValue().equals(columnInfo.getColumnValue())) {
             return true;
         } else {
             log.error("Column name or value not equal.");
-            log.error("colunm1 {} {}", this.columnName, this.columnValue);
+            log.error("colunm1 {} {}", this.columnName, this.getColumnValue());
             log.error("colunm2 {} {}", columnInfo.getColumnName(), columnInfo.getColumnValue());
             return false;
         }
@@ -61,7 +153,7 @@ public class ColumnInfo implements Comparable<ColumnInfo> {
         if (i != 0) {
             return i;
         } else {
-            return this.columnValue.compareTo(o.columnValue);
+            return this.getColumnValue().compareTo(o.getColumnValue());
         }
     }
 
@@ -69,7 +161,8 @@ public class ColumnInfo implements Comparable<ColumnInfo> {
     public int hashCode() {
         int result = 17;
         result = 31 * result + (columnName == null ? 0 : columnName.hashCode());
-        result = 31 * result + (columnValue == null ? 0 : columnValue.hashCode());
+        String value = getColumnValue();
+        result = 31 * result + (value == null ? 0 : value.hashCode());
         return result;
     }
 }
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * SourceHealth
+ *
+ * @Description: Download and read statistics of one binlog source
+ *
+ */
+@Data
+@Accessors(chain = true)
+public class SourceHealth {
+
+    private RemoteServerInfo source;
+    private long lastSeenBlock = -1;
+    private long downloadedBytes;
+    /**
+     * Smoothed download throughput, bytes per second
+     */
+    private double throughput;
+    private long errors;
+    private int consecutiveErrors;
+}
@@ -40,6 +40,8 @@ public enum DataStashExceptionCodeEnums {
     DATA_STASH_BINLOG_VERIFY_ERROR(2004, "binlog verify error"),
     DATA_STASH_BINLOG_NULL(2005, "binlog parsed is null"),
     DATA_STASH_BINLOG_BLOCKNUM_NOT_MATCH(2006, "binlog block number not match"),
+    DATA_STASH_CHECKSUM_TYPE(2007, "checksum type error"),
+    DATA_STASH_GROUP_COMMIT_WITH_TABLE_LANES(2008, "system.groupCommit can't be used with system.tableLanes"),
     DATA_STASH_ENTRY_NOT_MATCH_TABLE_ERROR(3000, "entry doesn't match any tables"),
     DATA_STASH_ENTRY_NO_TABLE_ERROR(3001, "table does not exist in sys_tables"),
     DATA_STASH_BLOCK_BYTES_LIST_IS_NULL(4000,"block bytes list is empty");
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.fetch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import com.webank.blockchain.data.stash.checksum.BlockChecksum;
+import com.webank.blockchain.data.stash.checksum.Crc32Checksum;
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.utils.BytesUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BinlogFileVerifier
+ *
+ * @Description: Walks every block of a complete binlog file and checks its length and checksum.
+ *
+ */
+@Slf4j
+public class BinlogFileVerifier {
+
+    public static boolean verify(File file) throws IOException {
+        return verify(file, new Crc32Checksum());
+    }
+
+    public static boolean verify(File file, BlockChecksum blockChecksum) throws IOException {
+        long length = file.length();
+        if (length < BinlogConstants.BLOCK_LENGTH) {
+            log.error("Binlog {} has no version header", file.getName());
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // skip version
+            in.readInt();
+            long offset = BinlogConstants.BLOCK_LENGTH;
+            while (offset < length) {
+                if (length - offset < BinlogConstants.BLOCK_LENGTH) {
+                    log.error("Binlog {} truncated at {}", file.getName(), offset);
+                    return false;
+                }
+                int blockLength = in.readInt();
+                offset += BinlogConstants.BLOCK_LENGTH;
+                if (blockLength < BinlogConstants.CRC32_LENGTH || length - offset < blockLength) {
+                    log.error("Binlog {} has invalid block length {} at {}", file.getName(), blockLength, offset);
+                    return false;
+                }
+                byte[] content = new byte[blockLength];
+                in.readFully(content);
+                int dataLength = blockLength - BinlogConstants.CRC32_LENGTH;
+                long checksum = BytesUtil.byte4UnsignFromSrcToLong(content, dataLength);
+                if (blockChecksum.checksum(content, 0, dataLength) != checksum) {
+                    log.error("Binlog {} crc32 error at {}", file.getName(), offset);
+                    return false;
+                }
+                offset += blockLength;
+            }
+        }
+        return true;
+    }
+
+}
@@ -29,14 +29,24 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class DefaultStreamProgress implements StreamProgress {
 
+    private String name;
+
+    public DefaultStreamProgress() {
+        this("");
+    }
+
+    public DefaultStreamProgress(String name) {
+        this.name = name;
+    }
+
     @Override
     public void start() {
-        log.info("Begin to start。。。。");
+        log.info("Begin to start {}。。。。", name);
     }
 
     @Override
     public void progress(long progressSize) {
-        log.info("Already download：{}", FileUtil.readableFileSize(progressSize));
+        log.info("{} already download：{}", name, FileUtil.readableFileSize(progressSize));
     }
 
     @Override
@@ -14,8 +14,19 @@
 package com.webank.blockchain.data.stash.fetch;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.webank.blockchain.data.stash.checksum.BlockChecksum;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.StreamProgress;
@@ -37,29 +48,129 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class HttpFileFetcher {
 
-    public static long downloadFile(String url, File destFile, StreamProgress streamProgress)
-            throws FileNotFoundException {
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * Download the file, resuming from the bytes already on local disk. A file not on local disk yet is downloaded
+     * into a part file and renamed once the response is complete, so the reader never sees it partially. A file
+     * already on local disk is the newest binlog, which is appended in place.
+     *
+     * @return bytes downloaded
+     */
+    public static long downloadFile(String url, File destFile, StreamProgress streamProgress) throws IOException {
         if (StrUtil.isBlank(url)) {
             throw new NullPointerException("[url] is null!");
         }
         if (null == destFile) {
             throw new NullPointerException("[destFile] is null!");
         }
-        if (!destFile.exists()) {
-            FileUtil.touch(destFile);
+        boolean visible = destFile.exists();
+        File target = visible ? destFile : new File(destFile.getAbsolutePath() + PART_SUFFIX);
+        if (!target.exists()) {
+            FileUtil.touch(target);
         }
-        long fileSize = FileUtil.size(destFile);
+        long fileSize = FileUtil.size(target);
         final HttpResponse response =
                 HttpRequest.get(url).timeout(300 * 1000).header("Range", "bytes=" + fileSize + "-")
                         .header(Header.USER_AGENT, "Data Stash http").header(Header.CONNECTION, "keep-alive").execute();
-        if (response.getStatus() != 206) {
-            if (response.getStatus() == 416) {
-                log.info("Already download all file.");
-                return 0;
+        long bytes = 0;
+        if (response.getStatus() == 416) {
+            log.info("Already download all file.");
+        } else if (response.getStatus() == 206) {
+            try (FileOutputStream out = new FileOutputStream(target.getAbsolutePath(), true)) {
+                bytes = response.writeBody(out, false, streamProgress);
+            }
+        } else {
+            throw new HttpException("Server response error with status code: [{}]", response.getStatus());
+        }
+        if (!visible) {
+            //Nothing to read in an empty file, it's published once the node writes to it
+            if (FileUtil.size(target) == 0) {
+                FileUtil.del(target);
+            } else {
+                Files.move(target.toPath(), destFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Download a complete file by splitting it into byte ranges which are fetched concurrently into a preallocated
+     * part file. The part file is verified block by block before it is renamed to the destination, so the reader
+     * never sees a file with holes.
+     *
+     * @param length the total size of the remote file
+     * @return bytes downloaded
+     */
+    public static long downloadFileSegmented(String url, File destFile, long length, int segments,
+            ExecutorService executor, BlockChecksum blockChecksum) throws IOException {
+        if (StrUtil.isBlank(url)) {
+            throw new NullPointerException("[url] is null!");
+        }
+        if (null == destFile) {
+            throw new NullPointerException("[destFile] is null!");
+        }
+        File partFile = new File(destFile.getAbsolutePath() + PART_SUFFIX);
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            raf.setLength(length);
+        }
+        long segmentSize = (length + segments - 1) / segments;
+        List<Future<Long>> futures = new ArrayList<>(segments);
+        for (long start = 0; start < length; start += segmentSize) {
+            long from = start;
+            long to = Math.min(start + segmentSize, length) - 1;
+            futures.add(executor.submit(() -> downloadRange(url, partFile, from, to)));
+        }
+        try {
+            for (Future<Long> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            FileUtil.del(partFile);
+            throw new IOException("Segmented download interrupted: " + url, e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            FileUtil.del(partFile);
+            throw new IOException("Segmented download failed: " + url, e.getCause());
+        }
+        if (!BinlogFileVerifier.verify(partFile, blockChecksum)) {
+            FileUtil.del(partFile);
+            throw new IOException("Segmented download verify failed: " + url);
+        }
+        Files.move(partFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        log.info("Segmented download of {} finished, {} segments, {} bytes", url, futures.size(), length);
+        return length;
+    }
+
+    private static long downloadRange(String url, File partFile, long start, long end) throws IOException {
+        final HttpResponse response = HttpRequest.get(url).timeout(300 * 1000)
+                .header("Range", "bytes=" + start + "-" + end).header(Header.USER_AGENT, "Data Stash http")
+                .header(Header.CONNECTION, "keep-alive").executeAsync();
+        if (response.getStatus() != 206) {
+            response.close();
             throw new HttpException("Server response error with status code: [{}]", response.getStatus());
         }
-        return response.writeBody(new FileOutputStream(destFile.getAbsolutePath(), true), false, streamProgress);
+        long expected = end - start + 1;
+        long written = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw"); InputStream in = response.bodyStream()) {
+            raf.seek(start);
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while (written < expected
+                    && (n = in.read(buffer, 0, (int) Math.min(buffer.length, expected - written))) != -1) {
+                raf.write(buffer, 0, n);
+                written += n;
+            }
+        } finally {
+            response.close();
+        }
+        if (written != expected) {
+            throw new IOException("Range " + start + "-" + end + " of " + url + " incomplete, got " + written);
+        }
+        log.debug("Range {}-{} of {} downloaded", start, end, url);
+        return written;
     }
 
 }
@@ -15,16 +15,22 @@ package com.webank.blockchain.data.stash.fetch;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.webank.blockchain.data.stash.utils.JsonUtils;
 import com.webank.blockchain.data.stash.utils.UnixDateTimeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
-import com.webank.blockchain.data.stash.utils.UnixDateTimeUtils;
 import cn.hutool.http.Header;
 import cn.hutool.http.HttpException;
 import cn.hutool.http.HttpRequest;
 import cn.hutool.http.HttpResponse;
+import lombok.AllArgsConstructor;
 
 /**
  * HttpFileScanner
@@ -37,16 +43,89 @@ import cn.hutool.http.HttpResponse;
 @Service
 public class HttpFileScanner {
 
+    private static final Map<String, Listing> LISTINGS = new ConcurrentHashMap<>();
+
+    /**
+     * Scan the binlog directory. The last listing of each url is cached and revalidated with If-Modified-Since and
+     * If-None-Match, so an unchanged directory costs one 304 response. If the server sends no validators, a body
+     * equal to the cached one is not parsed again. A 304 only tells that no file was added or removed, so the length
+     * of the newest file, which may still be growing, is checked again on each scan. Both the default html and the
+     * json format of nginx autoindex are supported.
+     *
+     * The returned directory may be shared by later calls, don't modify it.
+     */
     public static BinlogFileDir scan(String url) throws IOException {
-        final HttpResponse response = HttpRequest.get(url).timeout(5 * 1000)
+        Listing cached = LISTINGS.get(url);
+        HttpRequest request = HttpRequest.get(url).timeout(5 * 1000)
                 .header(Header.USER_AGENT,
                        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10.14; rv:68.0) Gecko/20100101 Firefox/68.0")
-                .keepAlive(true)
-                .execute();
+                .keepAlive(true);
+        if (cached != null) {
+            if (cached.lastModified != null) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
+            if (cached.etag != null) {
+                request.header("If-None-Match", cached.etag);
+            }
+        }
+        final HttpResponse response = request.execute();
+        if (response.getStatus() == 304 && cached != null) {
+            return refreshNewest(url, cached);
+        }
         if (response.getStatus() != 200) {
             throw new HttpException("Server response error with status code: [{}]", response.getStatus());
         }
         String body = response.body();
+        if (cached != null && body.equals(cached.body)) {
+            return cached.dir;
+        }
+        BinlogFileDir dir = isJson(response, body) ? parseJson(body) : parseHtml(body);
+        LISTINGS.put(url, new Listing(response.header("Last-Modified"), response.header("ETag"), body, dir));
+        return dir;
+    }
+
+    /**
+     * Sealed files keep their cached length, the newest one is asked for its length with a one byte range request.
+     */
+    private static BinlogFileDir refreshNewest(String url, Listing cached) throws IOException {
+        if (cached.dir.getBinlogFileInfoList().isEmpty()) {
+            return cached.dir;
+        }
+        BinlogFileInfo newest = cached.dir.getBinlogFileInfoList().last();
+        long length = remoteLength(url + newest.getName());
+        if (length == newest.getLength()) {
+            return cached.dir;
+        }
+        BinlogFileDir dir = new BinlogFileDir();
+        dir.getBinlogFileInfoList().addAll(cached.dir.getBinlogFileInfoList().headSet(newest));
+        dir.getBinlogFileInfoList().add(new BinlogFileInfo().setName(newest.getName()).setIndex(newest.getIndex())
+                .setLastModifyTime(newest.getLastModifyTime()).setLength(length));
+        // the cached body no longer matches the directory, the next 200 is parsed again
+        LISTINGS.put(url, new Listing(cached.lastModified, cached.etag, null, dir));
+        return dir;
+    }
+
+    private static long remoteLength(String url) throws IOException {
+        HttpResponse response = HttpRequest.get(url).timeout(5 * 1000).header("Range", "bytes=0-0")
+                .header(Header.USER_AGENT, "Data Stash http").keepAlive(true).execute();
+        String contentRange = response.header("Content-Range");
+        // 206 "bytes 0-0/N", or 416 "bytes */N" for an empty file
+        if ((response.getStatus() == 206 || response.getStatus() == 416) && StringUtils.contains(contentRange, "/")) {
+            return Long.parseLong(StringUtils.substringAfterLast(contentRange, "/").trim());
+        }
+        // the server ignored the range
+        if (response.getStatus() == 200) {
+            return Long.parseLong(response.header(Header.CONTENT_LENGTH));
+        }
+        throw new HttpException("Server response error with status code: [{}]", response.getStatus());
+    }
+
+    private static boolean isJson(HttpResponse response, String body) {
+        String contentType = response.header(Header.CONTENT_TYPE);
+        return StringUtils.containsIgnoreCase(contentType, "json") || StringUtils.startsWith(body.trim(), "[");
+    }
+
+    private static BinlogFileDir parseHtml(String body) {
         String[] s = StringUtils.split(body, "\n");
         BinlogFileDir dir = new BinlogFileDir();
         for (int i = 4; i < s.length - 2; i++) {
@@ -58,6 +137,42 @@ public class HttpFileScanner {
         return dir;
     }
 
+    /**
+     * Parse the listing of nginx "autoindex_format json", e.g.
+     * [{ "name":"0.binlog", "type":"file", "mtime":"Tue, 08 Dec 2020 06:48:21 GMT", "size":183368 }]
+     */
+    private static BinlogFileDir parseJson(String body) {
+        BinlogFileDir dir = new BinlogFileDir();
+        @SuppressWarnings("rawtypes")
+        List<Map> items = JsonUtils.fromJsonList(body, Map.class);
+        for (Map<?, ?> item : items) {
+            String fileName = String.valueOf(item.get("name"));
+            String s = StringUtils.substringBefore(fileName, ".");
+            if (!"file".equals(item.get("type")) || !StringUtils.isNumeric(s)
+                    || !StringUtils.endsWithIgnoreCase(fileName, ".binlog")) {
+                continue;
+            }
+            BinlogFileInfo binlogFileInfo = new BinlogFileInfo();
+            binlogFileInfo.setName(fileName).setIndex(Long.parseLong(s))
+                    .setLength(((Number) item.get("size")).longValue());
+            Object mtime = item.get("mtime");
+            if (mtime != null) {
+                binlogFileInfo.setLastModifyTime(
+                        ZonedDateTime.parse(mtime.toString(), DateTimeFormatter.RFC_1123_DATE_TIME).toLocalDateTime());
+            }
+            dir.getBinlogFileInfoList().add(binlogFileInfo);
+        }
+        return dir;
+    }
+
+    @AllArgsConstructor
+    private static class Listing {
+        private String lastModified;
+        private String etag;
+        private String body;
+        private BinlogFileDir dir;
+    }
+
     public static Optional<BinlogFileInfo> parseFile(String line) {
         if (StringUtils.contains(line, "</a>") && StringUtils.startsWith(line, "<a href=\"")) {
             String[] tokens = StringUtils.splitByWholeSeparator(line, "          ");
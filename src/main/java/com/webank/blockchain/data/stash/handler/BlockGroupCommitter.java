@@ -0,0 +1,168 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.handler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BlockGroupCommitter
+ *
+ * @Description: Coalesces consecutive parsed blocks into groups, every group is committed as one unit of work. A
+ *               group is closed once it holds maxBlocks blocks or maxRows rows, or maxDelayMillis after it was
+ *               opened, so a partial group never waits for more blocks. Blocks must be added in order, the groups
+ *               are handed to the committer in the same order.
+ *
+ */
+@Slf4j
+public class BlockGroupCommitter implements Closeable {
+
+    private final LongConsumer opener;
+    private final Function<List<BinlogBlockInfo>, CompletableFuture<?>> committer;
+    private final int maxBlocks;
+    private final int maxRows;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService timer;
+    private Group open;
+
+    /**
+     * @param opener called with the first block of a group when the group is opened
+     * @param committer starts the commit of the blocks of a group, the future completes once they are committed
+     */
+    public BlockGroupCommitter(LongConsumer opener, Function<List<BinlogBlockInfo>, CompletableFuture<?>> committer,
+            int maxBlocks, int maxRows, long maxDelayMillis) {
+        this.opener = opener;
+        this.committer = committer;
+        this.maxBlocks = Math.max(1, maxBlocks);
+        this.maxRows = maxRows;
+        this.maxDelayMillis = Math.max(1, maxDelayMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DataStashThreadFactory("groupCommit"));
+        timer.scheduleWithFixedDelay(this::flushExpired, this.maxDelayMillis, this.maxDelayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add the next block to the open group.
+     *
+     * @return completes once the group of the block is committed
+     */
+    public synchronized CompletableFuture<BinlogBlockInfo> add(BinlogBlockInfo blockInfo) {
+        if (open == null) {
+            opener.accept(blockInfo.getBlockNum());
+            open = new Group();
+        }
+        CompletableFuture<BinlogBlockInfo> future = open.add(blockInfo);
+        if (open.blocks.size() >= maxBlocks || open.rows >= maxRows) {
+            flush();
+        }
+        return future;
+    }
+
+    /**
+     * Close the open group, then commit the block alone on the caller thread. Later blocks are added after it's
+     * committed.
+     */
+    public synchronized BinlogBlockInfo commitNow(BinlogBlockInfo blockInfo) {
+        flush();
+        try {
+            committer.apply(Collections.singletonList(blockInfo)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return blockInfo;
+    }
+
+    /**
+     * Close the open group and start its commit.
+     */
+    public synchronized void flush() {
+        if (open == null) {
+            return;
+        }
+        Group group = open;
+        open = null;
+        CompletableFuture<?> committed;
+        try {
+            committed = committer.apply(group.blocks);
+        } catch (RuntimeException e) {
+            committed = new CompletableFuture<>();
+            committed.completeExceptionally(e);
+        }
+        committed.whenComplete((r, e) -> complete(group, e));
+    }
+
+    public synchronized int getOpenBlocks() {
+        return open == null ? 0 : open.blocks.size();
+    }
+
+    private synchronized void flushExpired() {
+        if (open != null && System.currentTimeMillis() - open.openedAt >= maxDelayMillis) {
+            flush();
+        }
+    }
+
+    private void complete(Group group, Throwable error) {
+        if (error != null) {
+            log.error("Commit of blocks {} to {} failed", group.blocks.get(0).getBlockNum(),
+                    group.blocks.get(group.blocks.size() - 1).getBlockNum());
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                    : error;
+            for (CompletableFuture<BinlogBlockInfo> future : group.futures) {
+                future.completeExceptionally(cause);
+            }
+            return;
+        }
+        for (int i = 0; i < group.blocks.size(); i++) {
+            group.futures.get(i).complete(group.blocks.get(i));
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        timer.shutdownNow();
+    }
+
+    private static class Group {
+        private final long openedAt = System.currentTimeMillis();
+        private final List<BinlogBlockInfo> blocks = new ArrayList<>();
+        private final List<CompletableFuture<BinlogBlockInfo>> futures = new ArrayList<>();
+        private long rows;
+
+        private CompletableFuture<BinlogBlockInfo> add(BinlogBlockInfo blockInfo) {
+            CompletableFuture<BinlogBlockInfo> future = new CompletableFuture<>();
+            blocks.add(blockInfo);
+            futures.add(future);
+            rows += blockInfo.getDataCount();
+            return future;
+        }
+    }
+}
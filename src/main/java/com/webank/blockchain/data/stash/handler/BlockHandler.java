@@ -13,28 +13,42 @@
  */
 package com.webank.blockchain.data.stash.handler;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 
 import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
 import com.webank.blockchain.data.stash.db.face.DataStorage;
 import com.webank.blockchain.data.stash.db.mapper.BlockTaskPoolMapper;
+import com.webank.blockchain.data.stash.db.model.BlockTaskPool;
 import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+import com.webank.blockchain.data.stash.entity.TableDataInfo;
 import com.webank.blockchain.data.stash.enums.BlockTaskPoolSyncStatusEnum;
+import com.webank.blockchain.data.stash.manager.SecondaryReadManager;
 import com.webank.blockchain.data.stash.parser.BlockBytesParser;
+import com.webank.blockchain.data.stash.store.BulkLoadWriter;
 import com.webank.blockchain.data.stash.thread.CallerRunOldestPolicy;
 import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+import com.webank.blockchain.data.stash.thread.OrderedLanes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
 import com.webank.blockchain.data.stash.enums.DataStashExceptionCodeEnums;
 import com.webank.blockchain.data.stash.exception.DataStashException;
+import com.webank.blockchain.data.stash.verify.BlockVerifyPolicy;
 import com.webank.blockchain.data.stash.verify.ComparisonValidation;
 
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * BlockHandler
@@ -58,18 +72,73 @@ public class BlockHandler {
     private SystemPropertyConfig config;
     @Autowired
     private BlockTaskPoolMapper blockTaskPoolMapper;
+    @Autowired
+    private BlockVerifyPolicy verifyPolicy;
+    @Autowired
+    private SecondaryReadManager secondaryReadManager;
+    @Autowired
+    private BulkLoadWriter bulkLoadWriter;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
     ThreadPoolExecutor sqlPool;
+    private BlockGroupCommitter groupCommitter;
+    private OrderedLanes tableLanes;
 
     @PostConstruct
     private void init(){
+        //A group is committed in one transaction, the lanes would store each table in a transaction of its own
+        if (config.getGroupCommit() == 1 && config.getTableLanes() > 0) {
+            throw new DataStashException(DataStashExceptionCodeEnums.DATA_STASH_GROUP_COMMIT_WITH_TABLE_LANES);
+        }
         //Dont use unbound arrays, otherwise OOM will happen!
         sqlPool = new ThreadPoolExecutor(config.getSqlThreads(),config.getSqlThreads(),
                 0, TimeUnit.DAYS, new LinkedBlockingQueue<>(config.getSqlQueueSize()), new DataStashThreadFactory("sqlPool"),
                 new CallerRunOldestPolicy());
+        if (config.getTableLanes() > 0) {
+            //The writes of a table are applied in block order, different tables are written in parallel
+            tableLanes = new OrderedLanes(config.getTableLanes(), config.getSqlQueueSize(), "tableLane");
+        }
+        if (config.getGroupCommit() == 1) {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            groupCommitter = new BlockGroupCommitter(this::openGroup,
+                    group -> CompletableFuture.runAsync(() -> transaction.execute(status -> {
+                        storeGroup(group);
+                        return null;
+                    }), sqlPool), config.getGroupCommitBlocks(), config.getGroupCommitRows(),
+                    config.getGroupCommitMillis());
+        }
+    }
+
+    @PreDestroy
+    private void destroy(){
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
+        if (tableLanes != null) {
+            tableLanes.close();
+        }
+    }
+
+    public CompletableFuture<BinlogBlockInfo> handleAsync(long block, List<ByteBuffer> blockBytesList) {
+        return storeAsync(parseBinlogThenVerify(block, blockBytesList));
     }
 
-    public CompletableFuture<BinlogBlockInfo> handleAsync(long block, List<byte[]> blockBytesList) {
-        BinlogBlockInfo blockInfo = parseBinlogThenVerify(block, blockBytesList);
+    /**
+     * Store the parsed block on the sql pool. Blocks must be passed in order, a block creating tables is stored
+     * before the call returns.
+     */
+    public CompletableFuture<BinlogBlockInfo> storeAsync(BinlogBlockInfo blockInfo) {
+        if (groupCommitter != null) {
+            //A block creating tables is committed alone, before the blocks after it
+            if (blockInfo.getTables().containsKey(DBStaticTableConstants.SYS_TABLES_TABLE)) {
+                return CompletableFuture.completedFuture(groupCommitter.commitNow(blockInfo));
+            }
+            return groupCommitter.add(blockInfo);
+        }
+        if (tableLanes != null) {
+            return storeInLanes(Collections.singletonList(blockInfo))
+                    .thenApplyAsync(v -> finishBlock(blockInfo), sqlPool);
+        }
         //Make sure table creation always happen first
         if(blockInfo.getTables().containsKey(DBStaticTableConstants.SYS_TABLES_TABLE)){
             return CompletableFuture.completedFuture(storeBlockData(blockInfo));
@@ -79,10 +148,34 @@ public class BlockHandler {
     }
 
 
-    private BinlogBlockInfo parseBinlogThenVerify(long block, List<byte[]> blockBytesList) {
+    public int getSqlQueueDepth() {
+        return sqlPool.getQueue().size() + (tableLanes == null ? 0 : tableLanes.getQueueDepth());
+    }
+
+    /**
+     * @return true if the writes of every table are applied in block order
+     */
+    public boolean isTableLanes() {
+        return tableLanes != null;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommitter != null;
+    }
+
+    /**
+     * Commit the open group without waiting for more blocks.
+     */
+    public void flushGroup() {
+        if (groupCommitter != null) {
+            groupCommitter.flush();
+        }
+    }
+
+    public BinlogBlockInfo parseBinlogThenVerify(long block, List<ByteBuffer> blockBytesList) {
         try{
             // 1. Parse binlog
-            byte[] firstBlockBytes = blockBytesList.get(0);
+            ByteBuffer firstBlockBytes = blockBytesList.get(0);
             BinlogBlockInfo blockInfo = parser.getBinlogBlockInfo(firstBlockBytes);
             log.debug("===============end binlog parse===================");
 
@@ -93,8 +186,15 @@ public class BlockHandler {
             if(block != blockInfo.getBlockNum())
                 throw new DataStashException(DataStashExceptionCodeEnums.DATA_STASH_BINLOG_BLOCKNUM_NOT_MATCH);
 
-            if (config.getBinlogVerify() == 1 && blockBytesList.size() > 1) {
-                if (!validator.compareValidate(blockInfo, blockBytesList)){
+            if (verifyPolicy.isSampling()) {
+                blockBytesList = sampleBinlogs(blockInfo, blockBytesList);
+            }
+            if (config.getBinlogVerify() != 0 && blockBytesList.size() > 1) {
+                //2 compares the digests first, only binlogs with a different digest are compared in full
+                boolean verified = config.getBinlogVerify() == 2
+                        ? validator.digestValidate(blockInfo, blockBytesList)
+                        : validator.compareValidate(blockInfo, blockBytesList);
+                if (!verified){
                     throw new DataStashException(DataStashExceptionCodeEnums.DATA_STASH_BINLOG_VERIFY_ERROR);
                 }
                 log.debug("===============end binlog verify===================");
@@ -108,6 +208,28 @@ public class BlockHandler {
         }
     }
 
+    /**
+     * Only the primary source is read in sampling mode, the binlogs of the secondary sources are read for the blocks
+     * selected by the verify policy.
+     */
+    private List<ByteBuffer> sampleBinlogs(BinlogBlockInfo blockInfo, List<ByteBuffer> blockBytesList){
+        if (config.getBinlogVerify() == 0 || !verifyPolicy.shouldVerify(blockInfo)) {
+            return blockBytesList.subList(0, 1);
+        }
+        if (blockBytesList.size() > 1) {
+            return blockBytesList;
+        }
+        List<ByteBuffer> secondaries = secondaryReadManager.read(blockInfo.getBlockNum());
+        if (secondaries.isEmpty()) {
+            log.warn("Block {} is not on any secondary source yet, skip verification", blockInfo.getBlockNum());
+            return blockBytesList;
+        }
+        List<ByteBuffer> all = new ArrayList<>(secondaries.size() + 1);
+        all.add(blockBytesList.get(0));
+        all.addAll(secondaries);
+        return all;
+    }
+
     private void onException(long blockNumber, Exception ex){
         blockTaskPoolMapper.updateSyncStatusByBlockHeight(BlockTaskPoolSyncStatusEnum.ERROR.getSyncStatus(),
                 blockNumber);
@@ -117,9 +239,88 @@ public class BlockHandler {
 
     private BinlogBlockInfo storeBlockData(BinlogBlockInfo blockInfo) {
         dataStorage.storeBlock(blockInfo);
-        blockTaskPoolMapper.updateSyncStatusByBlockHeight(BlockTaskPoolSyncStatusEnum.Done.getSyncStatus(),
-                blockInfo.getBlockNum());
+        return finishBlock(blockInfo);
+    }
+
+    private BinlogBlockInfo finishBlock(BinlogBlockInfo blockInfo) {
+        //In catch-up the block is done once its buffered rows are loaded
+        if (!bulkLoadWriter.isActive()) {
+            blockTaskPoolMapper.updateSyncStatusByBlockHeight(BlockTaskPoolSyncStatusEnum.Done.getSyncStatus(),
+                    blockInfo.getBlockNum());
+        }
         log.debug("===============end block data store===================");
         return blockInfo;
     }
+
+    /**
+     * Submit the tables of the blocks to their lanes, the data of a table in all blocks is one task. The tables
+     * of a block creating tables are stored before the rows of the block are submitted.
+     *
+     * @return completes once all tables are stored
+     */
+    private CompletableFuture<Void> storeInLanes(List<BinlogBlockInfo> blocks) {
+        List<CompletableFuture<Void>> stored = new ArrayList<>();
+        Map<String, List<TableDataInfo>> tables = new LinkedHashMap<>();
+        for (BinlogBlockInfo blockInfo : blocks) {
+            TableDataInfo sysTables = blockInfo.getTables().get(DBStaticTableConstants.SYS_TABLES_TABLE);
+            boolean creating = sysTables != null && sysTables.getNewEntrys() != null
+                    && !sysTables.getNewEntrys().isEmpty();
+            if (creating) {
+                submitTables(tables, stored);
+                tables.put(DBStaticTableConstants.SYS_TABLES_TABLE, Collections.singletonList(sysTables));
+                submitTables(tables, stored);
+                stored.get(stored.size() - 1).join();
+            }
+            for (Map.Entry<String, TableDataInfo> e : blockInfo.getTables().entrySet()) {
+                if (!creating || !e.getKey().equals(DBStaticTableConstants.SYS_TABLES_TABLE)) {
+                    tables.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
+                }
+            }
+        }
+        submitTables(tables, stored);
+        return CompletableFuture.allOf(stored.toArray(new CompletableFuture[0]));
+    }
+
+    private void submitTables(Map<String, List<TableDataInfo>> tables, List<CompletableFuture<Void>> stored) {
+        for (Map.Entry<String, List<TableDataInfo>> e : tables.entrySet()) {
+            String tableName = e.getKey();
+            List<TableDataInfo> datas = e.getValue();
+            stored.add(tableLanes.submit(tableName, () -> {
+                for (TableDataInfo data : datas) {
+                    dataStorage.storeData(tableName, data);
+                }
+            }));
+        }
+        tables.clear();
+    }
+
+    /**
+     * The task of the first block of a group is inserted unfinished when the group opens, so a later group
+     * committed first doesn't move the last finished block past it.
+     */
+    private void openGroup(long firstBlock) {
+        blockTaskPoolMapper.insertInto(new BlockTaskPool().setBlockHeight(firstBlock));
+    }
+
+    /**
+     * Store the blocks of a group and their tasks, in the transaction of the group.
+     */
+    private void storeGroup(List<BinlogBlockInfo> group) {
+        for (BinlogBlockInfo blockInfo : group) {
+            dataStorage.storeBlock(blockInfo);
+        }
+        finishGroup(group);
+    }
+
+    private void finishGroup(List<BinlogBlockInfo> group) {
+        //In catch-up the blocks are done once their buffered rows are loaded
+        int status = bulkLoadWriter.isActive() ? BlockTaskPoolSyncStatusEnum.INIT.getSyncStatus()
+                : BlockTaskPoolSyncStatusEnum.Done.getSyncStatus();
+        List<BlockTaskPool> tasks = new ArrayList<>(group.size());
+        for (BinlogBlockInfo blockInfo : group) {
+            tasks.add(new BlockTaskPool().setBlockHeight(blockInfo.getBlockNum()).setSyncStatus(status));
+        }
+        blockTaskPoolMapper.insertOrUpdateBatch(tasks);
+        log.debug("blocks {} to {} committed", group.get(0).getBlockNum(), group.get(group.size() - 1).getBlockNum());
+    }
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.handler;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+import com.webank.blockchain.data.stash.thread.SequencedRingBuffer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BlockPipeline
+ *
+ * @Description: Staged block handling. The reader submits blocks into a bounded parse queue, parse workers verify
+ *               and parse them concurrently into a sequenced ring buffer, and a single store stage takes them back
+ *               in submit order and hands them to storage. Every stage blocks the previous one when its buffer is
+ *               full.
+ *
+ */
+@Slf4j
+public class BlockPipeline implements Closeable {
+
+    private final BiFunction<Long, List<ByteBuffer>, BinlogBlockInfo> parser;
+    private final Function<BinlogBlockInfo, CompletableFuture<BinlogBlockInfo>> storage;
+    private final BlockingQueue<Task> parseQueue;
+    private final SequencedRingBuffer<Task> storeBuffer;
+    private final ExecutorService parseWorkers;
+    private final ExecutorService storeStage;
+    private long sequence;
+
+    /**
+     * @param parser verifies and parses the blocks of all sources
+     * @param storage stores a parsed block, called in submit order
+     */
+    public BlockPipeline(BiFunction<Long, List<ByteBuffer>, BinlogBlockInfo> parser,
+            Function<BinlogBlockInfo, CompletableFuture<BinlogBlockInfo>> storage, int parseWorkerCount,
+            int parseQueueSize, int storeQueueSize) {
+        this.parser = parser;
+        this.storage = storage;
+        this.parseQueue = new ArrayBlockingQueue<>(parseQueueSize);
+        this.storeBuffer = new SequencedRingBuffer<>(storeQueueSize);
+        this.parseWorkers = Executors.newFixedThreadPool(parseWorkerCount, new DataStashThreadFactory("parseWorker"));
+        for (int i = 0; i < parseWorkerCount; i++) {
+            parseWorkers.execute(this::parse);
+        }
+        this.storeStage = Executors.newSingleThreadExecutor(new DataStashThreadFactory("storeStage"));
+        storeStage.execute(this::store);
+    }
+
+    /**
+     * Submit the next block, blocks while the parse queue is full.
+     *
+     * @return completes once the block is stored
+     */
+    public synchronized CompletableFuture<BinlogBlockInfo> submit(long blockNumber, List<ByteBuffer> blocks)
+            throws InterruptedException {
+        Task task = new Task(sequence++, blockNumber, blocks);
+        parseQueue.put(task);
+        return task.future;
+    }
+
+    public int getParseQueueDepth() {
+        return parseQueue.size();
+    }
+
+    public int getStoreQueueDepth() {
+        return storeBuffer.size();
+    }
+
+    private void parse() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Task task = parseQueue.take();
+                try {
+                    task.blockInfo = parser.apply(task.blockNumber, task.blocks);
+                } catch (RuntimeException e) {
+                    task.error = e;
+                }
+                //Release the frames, only the parsed block is kept from now on
+                task.blocks = null;
+                storeBuffer.put(task.sequence, task);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void store() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Task task = storeBuffer.take();
+                if (task.error != null) {
+                    task.future.completeExceptionally(task.error);
+                    continue;
+                }
+                try {
+                    storage.apply(task.blockInfo).whenComplete((r, e) -> {
+                        if (e != null) {
+                            task.future.completeExceptionally(e);
+                        } else {
+                            task.future.complete(r);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    task.future.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        parseWorkers.shutdownNow();
+        storeStage.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "parse queue " + parseQueue.size() + ", store queue " + storeBuffer.size() + "/"
+                + storeBuffer.capacity();
+    }
+
+    private static class Task {
+        private final long sequence;
+        private final long blockNumber;
+        private List<ByteBuffer> blocks;
+        private BinlogBlockInfo blockInfo;
+        private RuntimeException error;
+        private final CompletableFuture<BinlogBlockInfo> future = new CompletableFuture<>();
+
+        private Task(long sequence, long blockNumber, List<ByteBuffer> blocks) {
+            this.sequence = sequence;
+            this.blockNumber = blockNumber;
+            this.blocks = blocks;
+        }
+    }
+}
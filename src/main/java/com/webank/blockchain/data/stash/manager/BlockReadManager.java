@@ -13,19 +13,37 @@
  */
 package com.webank.blockchain.data.stash.manager;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.webank.blockchain.data.stash.checksum.BlockChecksum;
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
 import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
 import com.webank.blockchain.data.stash.constants.BinlogConstants;
 import com.webank.blockchain.data.stash.db.mapper.BlockTaskPoolMapper;
 import com.webank.blockchain.data.stash.db.model.BlockTaskPool;
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
 import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
 import com.webank.blockchain.data.stash.enums.BlockTaskPoolSyncStatusEnum;
 import com.webank.blockchain.data.stash.handler.BlockHandler;
+import com.webank.blockchain.data.stash.handler.BlockPipeline;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+import com.webank.blockchain.data.stash.read.BlockReader;
 import com.webank.blockchain.data.stash.read.MultiSourceBlockReader;
+import com.webank.blockchain.data.stash.read.ParallelBlockReader;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+import com.webank.blockchain.data.stash.thread.InFlightWindow;
 import com.webank.blockchain.data.stash.utils.BytesUtil;
-import com.webank.blockchain.data.stash.utils.CRC32Util;
+import com.webank.blockchain.data.stash.verify.BlockVerifyPolicy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -53,41 +71,260 @@ public class BlockReadManager {
     private List<RemoteServerInfo> sources;
     @Autowired
     private RecoverSnapshotService recoverSerivce;
+    @Autowired
+    private BinlogFileCatalog binlogFileCatalog;
+    @Autowired
+    private ReadPropertyConfig readPropertyConfig;
+    @Autowired
+    private BlockChecksum blockChecksum;
+    @Autowired
+    private BlockVerifyPolicy verifyPolicy;
+    @Autowired
+    private SourceHealthTracker sourceHealthTracker;
+    @Autowired
+    private SecondaryReadManager secondaryReadManager;
+    @Autowired
+    private CatchUpManager catchUpManager;
+    private ThreadPoolExecutor readAheadPool;
+    private BlockPipeline blockPipeline;
+
+    private volatile long readPosition;
+    private final Object binlogLock = new Object();
+    private boolean newBinlog;
+
+    @PostConstruct
+    private void init() {
+        if (isParallelRead()) {
+            //One read-ahead thread per source, a reader waits for its threads to exit on close
+            readAheadPool = new ThreadPoolExecutor(sources.size(), sources.size(), 0, TimeUnit.DAYS,
+                    new LinkedBlockingQueue<>(sources.size()), new DataStashThreadFactory("readAhead"));
+        }
+        if (config.getPipeline() == 1) {
+            //Crc, parse and verify run on the parse workers, the reader only reads
+            blockPipeline = new BlockPipeline(
+                    (blockNumber, blocks) -> blockHandler.parseBinlogThenVerify(blockNumber,
+                            toBlockBodyDatas(blockNumber, blocks)),
+                    blockHandler::storeAsync, config.getParseWorkers(), config.getParseQueueSize(),
+                    config.getStoreQueueSize());
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (blockPipeline != null) {
+            blockPipeline.close();
+        }
+    }
 
     public int read() throws IORuntimeException, InterruptedException, Exception {
         //Determine the block to start
         BlockTaskPool blockTaskPool = blockTaskPoolMapper.getLastFinishedBlock();
         long todoNumber = prepare(blockTaskPool);
-        List<CompletableFuture> all = new ArrayList<>();
-        try(MultiSourceBlockReader blockReader = new MultiSourceBlockReader(sources, todoNumber,config.getBinlogSuffix())){
-            List<byte[]> blocks;
+        catchUpManager.beforeBatch(todoNumber);
+        readPosition = todoNumber;
+        InFlightWindow window = newWindow(todoNumber);
+        List<RemoteServerInfo> readSources = readSources();
+        try(BlockReader blockReader = openReader(readSources, todoNumber)){
+            List<ByteBuffer> blocks;
             while ((blocks = blockReader.read()) != null){
-                //Extract body and verify crc
-                List<byte[]> blockDatas = toBlockBodyDatas(todoNumber, blocks);
-                //Handle block body
-                all.add(blockHandler.handleAsync(todoNumber, blockDatas));
+                if ((blocks = withQuorum(todoNumber, blocks)) == null) {
+                    break;
+                }
+                handleBlock(window, todoNumber, blocks);
+                catchUpManager.flushIfFull(window);
                 //Start next task
                 todoNumber++;
-                initTaskStatus(todoNumber);
             }
         }
+        if (!window.isEmpty()) {
+            sourceHealthTracker.onBlock(readSources.get(0), todoNumber - 1);
+        }
+        return finishBatch(window);
+    }
+
+    private boolean isQuorumRead() {
+        return config.getVerifyQuorum() > 0 && sources.size() > 1;
+    }
+
+    /**
+     * In quorum mode add the frames of the secondary sources to the frame of the primary, otherwise the frames are
+     * verified as read.
+     *
+     * @return the frames, or null to wait for the sources to catch up
+     */
+    public List<ByteBuffer> withQuorum(long blockNumber, List<ByteBuffer> blocks) {
+        return isQuorumRead() ? withSecondaries(blockNumber, blocks) : blocks;
+    }
+
+    /**
+     * Add the frames of the secondary sources which have got the block. A lagging source doesn't hold the batch
+     * back, as long as system.verifyQuorum sources, the primary included, have got the block.
+     *
+     * @return the frames, or null to wait for the sources to catch up
+     */
+    private List<ByteBuffer> withSecondaries(long blockNumber, List<ByteBuffer> blocks) {
+        List<ByteBuffer> secondaries = secondaryReadManager.readFrames(blockNumber);
+        if (secondaries.size() + 1 < config.getVerifyQuorum()) {
+            log.info("Block {} is on {} sources only, wait for quorum {}", blockNumber, secondaries.size() + 1,
+                    config.getVerifyQuorum());
+            return null;
+        }
+        List<ByteBuffer> all = new ArrayList<>(secondaries.size() + 1);
+        all.add(blocks.get(0));
+        all.addAll(secondaries);
+        return all;
+    }
+
+    private boolean isParallelRead() {
+        return !isSecondaryOnDemand() && sources.size() > 1
+                && readPropertyConfig.getParallelRead().equalsIgnoreCase("yes");
+    }
+
+    /**
+     * In sampling or quorum mode only the primary source is read in sequence, the secondary sources are read on
+     * demand.
+     */
+    private boolean isSecondaryOnDemand() {
+        return verifyPolicy.isSampling() || isQuorumRead();
+    }
+
+    /**
+     * The sources read in sequence for the batch, primary first.
+     */
+    public List<RemoteServerInfo> readSources() {
+        List<RemoteServerInfo> ordered = sourceHealthTracker.selectPrimary();
+        return isSecondaryOnDemand() ? ordered.subList(0, 1) : ordered;
+    }
+
+    private BlockReader openReader(List<RemoteServerInfo> readSources, long todoNumber) throws IOException {
+        if (isParallelRead()) {
+            return new ParallelBlockReader(readSources, todoNumber, binlogFileCatalog, config.getBinlogSuffix(),
+                    readPropertyConfig.getReadAhead(), readAheadPool);
+        }
+        return new MultiSourceBlockReader(readSources, todoNumber, binlogFileCatalog, config.getBinlogSuffix());
+    }
+
+    /**
+     * Verify crc of the block read from every source, hand it to the block handler and start the next task.
+     */
+    public CompletableFuture<BinlogBlockInfo> handleBlock(long blockNumber, List<ByteBuffer> blocks)
+            throws InterruptedException {
+        if (blockPipeline != null) {
+            CompletableFuture<BinlogBlockInfo> future = blockPipeline.submit(blockNumber, blocks);
+            readPosition = blockNumber + 1;
+            nextTask(blockNumber + 1);
+            return future;
+        }
+        //Extract body and verify crc
+        List<ByteBuffer> blockDatas = toBlockBodyDatas(blockNumber, blocks);
+        //Handle block body
+        CompletableFuture<BinlogBlockInfo> future = blockHandler.handleAsync(blockNumber, blockDatas);
+        readPosition = blockNumber + 1;
+        nextTask(blockNumber + 1);
+        return future;
+    }
 
-        CompletableFuture.allOf(all.toArray(new CompletableFuture[0])).get();
-        if(!all.isEmpty()){
-            recoverSerivce.recoverSnapshotFromDetailTables();
+    /**
+     * Insert the task of the next block. With group commit the tasks are inserted by the groups.
+     */
+    private void nextTask(long todoNumber) {
+        if (!blockHandler.isGroupCommit()) {
+            initTaskStatus(todoNumber);
         }
-        else{
+    }
+
+    /**
+     * A window for the blocks of a batch starting at the given block, bounded by system.inFlightBytes.
+     */
+    public InFlightWindow newWindow(long firstBlock) {
+        return new InFlightWindow(firstBlock, config.getInFlightBytes());
+    }
+
+    /**
+     * Wait until the binlog bytes of the block fit in the window, then hand it over and track it in the window.
+     */
+    public CompletableFuture<BinlogBlockInfo> handleBlock(InFlightWindow window, long blockNumber,
+            List<ByteBuffer> blocks) throws InterruptedException, ExecutionException {
+        long bytes = 0;
+        for (ByteBuffer block : blocks) {
+            bytes += block.remaining();
+        }
+        window.acquire(bytes);
+        CompletableFuture<BinlogBlockInfo> future = handleBlock(blockNumber, blocks);
+        window.track(blockNumber, bytes, future);
+        return future;
+    }
+
+    /**
+     * Wait until all blocks of the batch are stored, then rebuild the current tables. In catch-up the buffered rows
+     * are loaded instead, the current tables are rebuilt once catch-up ends. Written in table lanes, the current
+     * tables are always up to date.
+     */
+    public int finishBatch(InFlightWindow window) throws Exception {
+        blockHandler.flushGroup();
+        window.await();
+        if(window.getCompleted() == 0){
             log.info("empty batch");
         }
-        log.info("{} blocks saved. Start next batch",all.size());
-        return all.size();
+        else if(catchUpManager.isActive()){
+            catchUpManager.flush(window);
+        }
+        else if(!blockHandler.isTableLanes()){
+            //Blocks stored in parallel may replace the current rows out of block order
+            recoverSerivce.recoverDirtyTables();
+        }
+        if (blockPipeline != null) {
+            log.debug("pipeline {}, sql queue {}", blockPipeline, blockHandler.getSqlQueueDepth());
+        }
+        log.info("{} blocks saved, done below block {}. Start next batch", window.getCompleted(),
+                window.getWatermark());
+        return window.getCompleted();
+    }
+
+    /**
+     * The next block number the reader is going to read.
+     */
+    public long getReadPosition() {
+        return readPosition;
+    }
+
+    /**
+     * Called by the downloader once new binlog bytes are on local disk.
+     */
+    public void notifyNewBinlog() {
+        synchronized (binlogLock) {
+            newBinlog = true;
+            binlogLock.notifyAll();
+        }
     }
 
-    private List<byte[]> toBlockBodyDatas(long blockNumber, List<byte[]> blockPackage){
+    /**
+     * Wait until new binlog bytes are ready or the timeout elapses.
+     *
+     * @return true if new binlog bytes are ready
+     */
+    public boolean awaitNewBinlog(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (binlogLock) {
+            long remain = timeoutMillis;
+            while (!newBinlog && remain > 0) {
+                binlogLock.wait(remain);
+                remain = deadline - System.currentTimeMillis();
+            }
+            boolean ready = newBinlog;
+            newBinlog = false;
+            return ready;
+        }
+    }
+
+    private List<ByteBuffer> toBlockBodyDatas(long blockNumber, List<ByteBuffer> blockPackage){
         //1. Verify block CRC
-        List<byte[]> blockDatas = new ArrayList<>();
-        for(byte[] block: blockPackage){
-            byte[] data = Arrays.copyOfRange(block, 0, block.length - BinlogConstants.CRC32_LENGTH);
+        List<ByteBuffer> blockDatas = new ArrayList<>();
+        for(ByteBuffer block: blockPackage){
+            //A view without the crc32, the block bytes are not copied
+            ByteBuffer data = block.duplicate();
+            data.limit(data.limit() - BinlogConstants.CRC32_LENGTH);
+            data = data.slice();
             blockDatas.add(data);
             //verify crc32
             if (!verifyCRC32(block, data)) {
@@ -118,12 +355,17 @@ public class BlockReadManager {
     }
 
 
+    public boolean verifyCRC32(ByteBuffer content, ByteBuffer datas) {
+        long checksum = BytesUtil.byte4UnsignFromSrcToLong(content, content.limit() - BinlogConstants.CRC32_LENGTH);
+        return blockChecksum.checksum(datas) == checksum;
+    }
+
     public boolean verifyCRC32(byte[] content, byte[] datas) {
         byte[] checksumBytes =
                 Arrays.copyOfRange(content, content.length - BinlogConstants.CRC32_LENGTH, content.length);
         long checksum = BytesUtil.byte4UnsignToLong(checksumBytes);
 
-        if (!CRC32Util.equals(datas, checksum)) {
+        if (blockChecksum.checksum(datas, 0, datas.length) != checksum) {
             return false;
         }
         return true;
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.DBDynamicTableConstants;
+import com.webank.blockchain.data.stash.db.mapper.BlockTaskPoolMapper;
+import com.webank.blockchain.data.stash.db.model.SysTablesInfo;
+import com.webank.blockchain.data.stash.db.service.SysTablesInfoService;
+import com.webank.blockchain.data.stash.enums.BlockTaskPoolSyncStatusEnum;
+import com.webank.blockchain.data.stash.store.BulkLoadWriter;
+import com.webank.blockchain.data.stash.thread.InFlightWindow;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CatchUpManager
+ *
+ * @Description: Switches the storage of dynamic tables to bulk load while the stash is more than
+ *               system.bulkCatchUpDistance blocks behind the newest block seen on the sources, and back to incremental
+ *               writes once it's close to the head. Blocks are marked done only after their rows are loaded, so a
+ *               crash rolls back to the last load. The current tables are rebuilt once catch-up ends, a marker file
+ *               keeps the rebuild pending across restarts.
+ *
+ */
+@Service
+@Slf4j
+public class CatchUpManager {
+    private static final String PENDING_FILE = "bulkload.pending";
+
+    @Autowired
+    private SystemPropertyConfig config;
+    @Autowired
+    private SourceHealthTracker sourceHealthTracker;
+    @Autowired
+    private BulkLoadWriter bulkLoadWriter;
+    @Autowired
+    private BlockTaskPoolMapper blockTaskPoolMapper;
+    @Autowired
+    private SysTablesInfoService sysTablesInfoService;
+    @Autowired
+    private RecoverSnapshotService recoverSnapshotService;
+
+    private boolean caughtUp;
+    private long doneBelow;
+
+    public boolean isActive() {
+        return bulkLoadWriter.isActive();
+    }
+
+    /**
+     * Select the storage mode before a batch starting at the block. Catch-up is entered at most once, so the mode
+     * doesn't flap around the distance. If local data can't be loaded, the dynamic tables stay on incremental
+     * writes.
+     */
+    public void beforeBatch(long todoNumber) throws IOException {
+        long head = sourceHealthTracker.getHeadBlock();
+        boolean catchUp = config.getBulkCatchUp() == 1 && !caughtUp && head >= 0
+                && head - todoNumber > config.getBulkCatchUpDistance();
+        if (catchUp && !isActive() && !bulkLoadWriter.isAvailable()) {
+            catchUp = false;
+        }
+        if (catchUp && !isActive()) {
+            log.info("Block {} is {} blocks behind the head, start bulk load catch-up", todoNumber,
+                    head - todoNumber);
+            File pending = pendingFile();
+            if (!pending.exists() && !pending.createNewFile()) {
+                throw new IOException("Can not create " + pending);
+            }
+            doneBelow = todoNumber;
+            bulkLoadWriter.setActive(true);
+        } else if (!catchUp && !caughtUp && (isActive() || pendingFile().exists())) {
+            finish(todoNumber);
+        }
+    }
+
+    /**
+     * Load the buffered rows once they reach system.bulkLoadBytes.
+     */
+    public void flushIfFull(InFlightWindow window) {
+        if (isActive() && bulkLoadWriter.isFull()) {
+            flush(window);
+        }
+    }
+
+    /**
+     * Load the buffered rows, then mark the blocks below the watermark done. All rows of those blocks were
+     * buffered before the load.
+     */
+    public void flush(InFlightWindow window) {
+        long watermark = window.getWatermark();
+        bulkLoadWriter.flush();
+        if (watermark > doneBelow) {
+            blockTaskPoolMapper.updateSyncStatusByBlockRange(BlockTaskPoolSyncStatusEnum.Done.getSyncStatus(),
+                    doneBelow, watermark);
+            doneBelow = watermark;
+        }
+    }
+
+    private void finish(long todoNumber) {
+        log.info("Block {} is close to the head, rebuild current tables and stop bulk load catch-up", todoNumber);
+        bulkLoadWriter.setActive(false);
+        caughtUp = true;
+        long start = System.currentTimeMillis();
+        List<SysTablesInfo> tables = sysTablesInfoService.selectAllTables();
+        for (SysTablesInfo table : tables) {
+            if (isDynamicTable(table.getTableName())) {
+                bulkLoadWriter.rebuild(table.getTableName());
+            }
+        }
+        recoverSnapshotService.recoverSnapshotFromDetailTables();
+        if (!pendingFile().delete()) {
+            log.warn("Can not delete {}", pendingFile());
+        }
+        log.info("Bulk load catch-up complete, current tables rebuilt in {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Tables stored by the dynamic table service, the ones written by bulk load.
+     */
+    private boolean isDynamicTable(String tableName) {
+        return !tableName.startsWith(DBDynamicTableConstants.SYS_TABLE_PRE_FIX)
+                && !tableName.startsWith(DBDynamicTableConstants.CONTRACT_DATA_PRE_FIX)
+                && !tableName.startsWith(DBDynamicTableConstants.CONTRAACT_PARAFUNC_FIX);
+    }
+
+    private File pendingFile() {
+        return new File(config.getLocalBinlogPath(), PENDING_FILE);
+    }
+}
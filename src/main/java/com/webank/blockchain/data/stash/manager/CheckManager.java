@@ -13,21 +13,14 @@
  */
 package com.webank.blockchain.data.stash.manager;
 
-import java.io.File;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
-import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
 import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.util.StrUtil;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -45,15 +38,11 @@ public class CheckManager {
     @Autowired
     private List<RemoteServerInfo> sources;
     @Autowired
-    private SystemPropertyConfig config;
+    private BinlogFileCatalog binlogFileCatalog;
 
     public void check() {
         for (RemoteServerInfo info : sources) {
-            List<String> files = Arrays.stream(new File(info.getLocalFilePath()).list())
-                    .filter(s -> StrUtil.endWith(s, config.getBinlogSuffix()))
-                    .map(s -> StringUtils.substringBefore(s, ".")).filter(StringUtils::isNumeric)
-                    .collect(Collectors.toList());
-            if (CollectionUtils.isEmpty(files)) {
+            if (binlogFileCatalog.isEmpty(info)) {
                 log.error("Binlog file path {} is empty. ", info.getLocalFilePath());
                 System.exit(2);
             }
@@ -14,8 +14,8 @@
 package com.webank.blockchain.data.stash.manager;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeSet;
 
 import com.webank.blockchain.data.stash.db.mapper.BlockTaskPoolMapper;
 import com.webank.blockchain.data.stash.db.model.BlockTaskPool;
@@ -25,7 +25,8 @@ import org.springframework.stereotype.Service;
 
 import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
 import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
-import com.webank.blockchain.data.stash.utils.BinlogFileUtils;
+import com.webank.blockchain.data.stash.read.BinlogBlockIndex;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
 
 import cn.hutool.core.io.FileUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -49,6 +50,8 @@ public class CleanManager {
     private SystemPropertyConfig systemPropertyConfig;
     @Autowired
     private ReadPropertyConfig readPropertyConfig;
+    @Autowired
+    private BinlogFileCatalog binlogFileCatalog;
 
     public void clean() {
         BlockTaskPool latest = blockTaskPoolMapper.getLastFinishedBlock();
@@ -56,13 +59,13 @@ public class CleanManager {
             return;
         }
         for (RemoteServerInfo server : sources) {
-            TreeSet<Long> localFiles =
-                    BinlogFileUtils.getFileIds(server.getLocalFilePath(), systemPropertyConfig.getBinlogSuffix());
-            long floor = localFiles.floor(latest.getBlockHeight());
-            for (long l : localFiles) {
-                if (l < floor) {
-                    remove(server, l);
-                }
+            Long floor = binlogFileCatalog.floor(server, latest.getBlockHeight());
+            if (floor == null) {
+                continue;
+            }
+            //Copy the ids, remove changes the catalog
+            for (long l : new ArrayList<>(binlogFileCatalog.getFileIds(server).headSet(floor, false))) {
+                remove(server, l);
             }
         }
     }
@@ -71,6 +74,9 @@ public class CleanManager {
         String fileName = index + "." + systemPropertyConfig.getBinlogSuffix();
         File destFile = new File(server.getLocalFilePath() + fileName);
         log.info("Delete file: {}", destFile.getAbsolutePath());
+        binlogFileCatalog.remove(server, index);
+        //The index is rebuilt from the binlog whenever needed, so it's never backed up
+        FileUtil.del(BinlogBlockIndex.indexFile(destFile));
         if (readPropertyConfig.getClean().equalsIgnoreCase("yes")) {
             FileUtil.del(destFile);
         } else {
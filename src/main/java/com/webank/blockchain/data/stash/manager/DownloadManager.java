@@ -15,19 +15,30 @@ package com.webank.blockchain.data.stash.manager;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+
+import com.webank.blockchain.data.stash.checksum.BlockChecksum;
 import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
 import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
 import com.webank.blockchain.data.stash.db.mapper.BlockTaskPoolMapper;
 import com.webank.blockchain.data.stash.db.model.BlockTaskPool;
 import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
 import com.webank.blockchain.data.stash.fetch.BinlogFileDir;
+import com.webank.blockchain.data.stash.fetch.BinlogFileInfo;
 import com.webank.blockchain.data.stash.fetch.DefaultStreamProgress;
 import com.webank.blockchain.data.stash.fetch.HttpFileScanner;
-import com.webank.blockchain.data.stash.utils.BinlogFileUtils;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
 import com.webank.blockchain.data.stash.utils.JsonUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -58,13 +69,69 @@ public class DownloadManager {
     private ReadPropertyConfig readPropertyConfig;
     @Autowired
     private BlockTaskPoolMapper blockTaskPoolMapper;
+    @Autowired
+    private BinlogFileCatalog binlogFileCatalog;
+    @Autowired
+    private BlockChecksum blockChecksum;
+    @Autowired
+    private SourceHealthTracker sourceHealthTracker;
+    private ThreadPoolExecutor downloadPool;
+    private ThreadPoolExecutor segmentPool;
+
+    @PostConstruct
+    private void init() {
+        int threads = Math.max(1, Math.min(readPropertyConfig.getDownloadThreads(), sources.size()));
+        //A download pass and a prefetch round may overlap, each adds one task per source, so the queue is unbounded
+        downloadPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.DAYS, new LinkedBlockingQueue<>(),
+                new DataStashThreadFactory("downloadPool"));
+        int segments = readPropertyConfig.getDownloadSegments();
+        if (segments > 1) {
+            segmentPool = new ThreadPoolExecutor(segments, segments, 0, TimeUnit.DAYS,
+                    new LinkedBlockingQueue<>(segments * sources.size()), new DataStashThreadFactory("segmentPool"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
 
     public void download() throws IOException, InterruptedException {
+        if (sources.size() > 1 && readPropertyConfig.getConcurrentDownload().equalsIgnoreCase("yes")) {
+            downloadConcurrently();
+            return;
+        }
         for (int i = 0; i < sources.size(); i++) {
             downloadFirstItem(sources.get(i));
         }
     }
 
+    /**
+     * Download all sources in parallel, so one pass costs the slowest source instead of the sum of all. A failed
+     * source is logged and skipped, the others still finish their downloads.
+     */
+    public void downloadConcurrently() throws InterruptedException {
+        List<Future<TreeSet<Long>>> futures = new ArrayList<>(sources.size());
+        for (RemoteServerInfo server : sources) {
+            futures.add(downloadPool.submit(() -> downloadFirstItem(server)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                log.error("Download from {} failed, skip it in this round.", sources.get(i).getUrl(), e.getCause());
+                sourceHealthTracker.onError(sources.get(i));
+            }
+        }
+    }
+
+    /**
+     * Scan the remote binlogs of the source, the first block of its newest binlog is on the source.
+     */
+    public BinlogFileDir scan(RemoteServerInfo server) throws IOException {
+        BinlogFileDir dir = scanWithRetry(server.getUrl(), 3);
+        if (dir.getSize() > 0) {
+            sourceHealthTracker.onBlock(server, dir.getBinlogFileInfoList().last().getIndex());
+        }
+        return dir;
+    }
+
     public BinlogFileDir scanWithRetry(String url, int maxTimes) throws IOException {
         BinlogFileDir dir = HttpFileScanner.scan(url);
         if (maxTimes > 1 && dir.getSize() <= 0) {
@@ -75,9 +142,8 @@ public class DownloadManager {
     }
 
     public TreeSet<Long> downloadFirstItem(RemoteServerInfo server) throws IOException, InterruptedException {
-        TreeSet<Long> localFiles =
-                BinlogFileUtils.getFileIds(server.getLocalFilePath(), systemPropertyConfig.getBinlogSuffix());
-        BinlogFileDir dir = scanWithRetry(server.getUrl(), 3);
+        TreeSet<Long> localFiles = new TreeSet<>(binlogFileCatalog.getFileIds(server));
+        BinlogFileDir dir = scan(server);
         log.info("Scan remote item {}, size: {}", 0, dir.getSize());
         if (dir.getSize() == 0) {
             return localFiles;
@@ -98,7 +164,7 @@ public class DownloadManager {
             }
             log.info("Download start from last task: {}", last);
         }
-        download(server, last);
+        download(server, dir, last);
         localFiles.add(last);
         while (localFiles.size() < readPropertyConfig.getFiles()) {
             if (last >= remote.last()) {
@@ -107,11 +173,10 @@ public class DownloadManager {
             long todo = remote.higher(last);
             log.debug("remote: {}", JsonUtils.toJson(remote));
             log.info("next to do is {}", todo);
-            download(server, todo);
+            download(server, dir, todo);
             localFiles.add(todo);
             if (todo == remote.last()) {
                 log.info("Nothing to download.");
-                Thread.sleep(5 * 1000L);
                 break;
             }
             last = todo;
@@ -119,22 +184,127 @@ public class DownloadManager {
         return localFiles;
     }
 
-    public void download(RemoteServerInfo server, long index) throws IOException {
+    /**
+     * Download the binlog files of all sources, starting at the file which contains the given block and keeping
+     * at most window files. Files already complete locally are skipped.
+     *
+     * @return total bytes downloaded in this round
+     */
+    public long prefetch(long blockNumber, int window) throws InterruptedException {
+        long total = 0;
+        if (sources.size() > 1 && readPropertyConfig.getConcurrentDownload().equalsIgnoreCase("yes")) {
+            List<Future<Long>> futures = new ArrayList<>(sources.size());
+            for (RemoteServerInfo server : sources) {
+                futures.add(downloadPool.submit(() -> prefetch(server, blockNumber, window)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    total += futures.get(i).get();
+                } catch (ExecutionException e) {
+                    log.error("Prefetch from {} failed, skip it in this round.", sources.get(i).getUrl(),
+                            e.getCause());
+                    sourceHealthTracker.onError(sources.get(i));
+                }
+            }
+            return total;
+        }
+        for (RemoteServerInfo server : sources) {
+            try {
+                total += prefetch(server, blockNumber, window);
+            } catch (IOException | HttpException e) {
+                log.error("Prefetch from {} failed, skip it in this round.", server.getUrl(), e);
+                sourceHealthTracker.onError(server);
+            }
+        }
+        return total;
+    }
+
+    public long prefetch(RemoteServerInfo server, long blockNumber, int window) throws IOException {
+        BinlogFileDir dir = scan(server);
+        if (dir.getSize() == 0) {
+            return 0;
+        }
+        BinlogFileInfo start = dir.getBinlogFileInfoList().floor(new BinlogFileInfo().setIndex(blockNumber));
+        if (start == null) {
+            start = dir.getBinlogFileInfoList().first();
+        }
+        long total = 0;
+        int count = 0;
+        for (BinlogFileInfo remote : dir.getBinlogFileInfoList().tailSet(start, true)) {
+            if (count++ >= window) {
+                break;
+            }
+            File destFile = new File(server.getLocalFilePath() + remote.getName());
+            if (destFile.exists() && destFile.length() >= remote.getLength()) {
+                continue;
+            }
+            total += download(server, dir, remote.getIndex());
+        }
+        return total;
+    }
+
+    /**
+     * Download one binlog file. Only the newest remote file is still appended by the node, any older file is
+     * complete, so if it's large and not on local disk yet it's fetched as concurrent byte ranges.
+     */
+    public long download(RemoteServerInfo server, BinlogFileDir dir, long index) throws IOException {
+        BinlogFileInfo remote = dir.getBinlogFileInfoList().floor(new BinlogFileInfo().setIndex(index));
+        if (remote != null && remote.getIndex() == index && shouldSegment(server, dir, remote)) {
+            String fileName = index + "." + systemPropertyConfig.getBinlogSuffix();
+            File destFile = new File(server.getLocalFilePath() + fileName);
+            log.info("Begin to download {}, binlog file: {} in {} segments", server.getUrl(), index,
+                    readPropertyConfig.getDownloadSegments());
+            try {
+                long start = System.currentTimeMillis();
+                long bytes = HttpFileFetcher.downloadFileSegmented(server.getUrl() + fileName, destFile,
+                        remote.getLength(), readPropertyConfig.getDownloadSegments(), segmentPool, blockChecksum);
+                sourceHealthTracker.onDownload(server, bytes, System.currentTimeMillis() - start);
+                binlogFileCatalog.add(server, index);
+                return bytes;
+            } catch (IOException | HttpException e) {
+                log.warn("Segmented download of {} failed, fall back to single stream: {}", fileName,
+                        e.getMessage());
+            }
+        }
+        return download(server, index);
+    }
+
+    private boolean shouldSegment(RemoteServerInfo server, BinlogFileDir dir, BinlogFileInfo remote) {
+        if (segmentPool == null || remote.getLength() < readPropertyConfig.getSegmentThreshold()) {
+            return false;
+        }
+        if (remote.compareTo(dir.getBinlogFileInfoList().last()) >= 0) {
+            return false;
+        }
+        File destFile =
+                new File(server.getLocalFilePath() + remote.getIndex() + "." + systemPropertyConfig.getBinlogSuffix());
+        return !destFile.exists() || destFile.length() == 0;
+    }
+
+    public long download(RemoteServerInfo server, long index) throws IOException {
         String fileName = index + "." + systemPropertyConfig.getBinlogSuffix();
         File destFile = new File(server.getLocalFilePath() + fileName);
         log.info("Begin to download {}, binlog file: {} ", server.getUrl(), index);
-        downloadWithRetry(server.getUrl() + fileName, destFile, new DefaultStreamProgress(), 3);
+        long start = System.currentTimeMillis();
+        long bytes = downloadWithRetry(server.getUrl() + fileName, destFile,
+                new DefaultStreamProgress("[" + server.getItem() + "] " + fileName), 3);
+        sourceHealthTracker.onDownload(server, bytes, System.currentTimeMillis() - start);
+        if (destFile.exists()) {
+            binlogFileCatalog.add(server, index);
+        }
+        return bytes;
     }
 
-    public void downloadWithRetry(String url, File destFile, StreamProgress streamProgress, int maxTimes)
+    public long downloadWithRetry(String url, File destFile, StreamProgress streamProgress, int maxTimes)
             throws IOException {
         try {
-            HttpFileFetcher.downloadFile(url, destFile, streamProgress);
+            return HttpFileFetcher.downloadFile(url, destFile, streamProgress);
         } catch (HttpException e) {
             log.error("Exception {}", e.getMessage());
             if (maxTimes > 1) {
-                downloadWithRetry(url, destFile, streamProgress, maxTimes - 1);
+                return downloadWithRetry(url, destFile, streamProgress, maxTimes - 1);
             }
+            return 0;
         }
     }
 }
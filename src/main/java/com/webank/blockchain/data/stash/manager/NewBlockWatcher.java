@@ -0,0 +1,194 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.manager;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.fetch.BinlogFileDir;
+import com.webank.blockchain.data.stash.fetch.BinlogFileInfo;
+import com.webank.blockchain.data.stash.fetch.HttpFileScanner;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * NewBlockWatcher
+ *
+ * @Description: Wakes the sync loop as soon as new binlog bytes appear, either in a local binlog directory or on
+ *               the remote server, instead of sleeping a fixed interval. Files created or deleted by other processes
+ *               are also reflected in the binlog file catalog.
+ *
+ */
+@Service
+@Slf4j
+public class NewBlockWatcher {
+    @Autowired
+    private List<RemoteServerInfo> sources;
+    @Autowired
+    private ReadPropertyConfig readPropertyConfig;
+    @Autowired
+    private BlockReadManager blockReadManager;
+    @Autowired
+    private BinlogFileCatalog binlogFileCatalog;
+    @Autowired
+    private SourceHealthTracker sourceHealthTracker;
+
+    private WatchService watchService;
+    private Map<WatchKey, RemoteServerInfo> watchedSources = new HashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    private void init() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (RemoteServerInfo server : sources) {
+                WatchKey key = Paths.get(server.getLocalFilePath()).register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedSources.put(key, server);
+            }
+        } catch (IOException e) {
+            log.warn("Local binlog directories can not be watched, only polling remote: {}", e.getMessage());
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(new DataStashThreadFactory("binlogWatcher"));
+        executor.execute(this::watch);
+    }
+
+    @PreDestroy
+    private void destroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Wait until new binlog bytes appear or maxWaitMillis elapses. Local changes wake up immediately, the remote
+     * servers are polled with an exponential backoff between read.pollMinInterval and read.pollMaxInterval.
+     *
+     * @return true if new binlog bytes appeared
+     */
+    public boolean awaitNewBlocks(long maxWaitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        long delay = readPropertyConfig.getPollMinInterval();
+        long remain = maxWaitMillis;
+        while (remain > 0) {
+            if (blockReadManager.awaitNewBinlog(Math.min(delay, remain))) {
+                return true;
+            }
+            if (remoteChanged()) {
+                return true;
+            }
+            delay = Math.min(delay * 2, readPropertyConfig.getPollMaxInterval());
+            remain = deadline - System.currentTimeMillis();
+        }
+        return false;
+    }
+
+    /**
+     * Poll the primary first, then the secondaries, a source ahead of the primary wakes the sync loop as well.
+     */
+    private boolean remoteChanged() {
+        if (remoteChanged(sourceHealthTracker.getPrimary())) {
+            return true;
+        }
+        for (RemoteServerInfo server : sourceHealthTracker.getSecondaries()) {
+            if (remoteChanged(server)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean remoteChanged(RemoteServerInfo server) {
+        try {
+            BinlogFileDir dir = HttpFileScanner.scan(server.getUrl());
+            if (dir.getSize() == 0) {
+                return false;
+            }
+            Long localLast = binlogFileCatalog.last(server);
+            BinlogFileInfo remote = dir.getBinlogFileInfoList().last();
+            if (localLast == null || remote.getIndex() > localLast) {
+                return true;
+            }
+            long localLength = Paths.get(server.getLocalFilePath(), remote.getName()).toFile().length();
+            return remote.getIndex().equals(localLast) && remote.getLength() > localLength;
+        } catch (Exception e) {
+            log.debug("Poll remote binlog of {} failed: {}", server.getUrl(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            RemoteServerInfo server = watchedSources.get(key);
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    //Events are lost, list the directory again
+                    binlogFileCatalog.refresh(server);
+                    changed = true;
+                    continue;
+                }
+                Object context = event.context();
+                Long fileId = context instanceof Path ? binlogFileCatalog.parseFileId(context.toString()) : null;
+                if (fileId == null) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    binlogFileCatalog.remove(server, fileId);
+                } else {
+                    binlogFileCatalog.add(server, fileId);
+                    changed = true;
+                }
+            }
+            key.reset();
+            if (changed) {
+                blockReadManager.notifyNewBinlog();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.manager;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * PrefetchManager
+ *
+ * @Description: Keeps a window of binlog files ahead of the reader downloaded in background, so downloading and
+ *               storing blocks overlap instead of alternating.
+ *
+ */
+@Service
+@Slf4j
+public class PrefetchManager {
+    @Autowired
+    private DownloadManager downloadManager;
+    @Autowired
+    private BlockReadManager blockReadManager;
+    @Autowired
+    private ReadPropertyConfig readPropertyConfig;
+
+    private ScheduledExecutorService executor;
+    private boolean suspended;
+
+    public boolean isEnabled() {
+        return readPropertyConfig.getPrefetch().equalsIgnoreCase("yes");
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new DataStashThreadFactory("prefetch"));
+        executor.scheduleWithFixedDelay(this::prefetch, 0, readPropertyConfig.getPrefetchInterval(),
+                TimeUnit.MILLISECONDS);
+        log.info("Binlog prefetch started, window: {} files", readPropertyConfig.getPrefetchWindow());
+    }
+
+    /**
+     * Stop downloading until {@link #resume()}, waits for the running round to finish.
+     */
+    public synchronized void suspend() {
+        suspended = true;
+    }
+
+    public synchronized void resume() {
+        suspended = false;
+    }
+
+    private synchronized void prefetch() {
+        if (suspended) {
+            return;
+        }
+        try {
+            long position = blockReadManager.getReadPosition();
+            long bytes = downloadManager.prefetch(position, readPropertyConfig.getPrefetchWindow());
+            if (bytes > 0) {
+                log.debug("Prefetched {} bytes from block {}", bytes, position);
+                blockReadManager.notifyNewBinlog();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            //Never let the exception escape, otherwise the scheduled task is cancelled
+            log.error("Binlog prefetch failed", e);
+        }
+    }
+
+}
@@ -3,26 +3,34 @@ package com.webank.blockchain.data.stash.manager;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
 import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
-import com.webank.blockchain.data.stash.db.model.DynamicTableInfo;
 import com.webank.blockchain.data.stash.db.model.SysTablesInfo;
-import com.webank.blockchain.data.stash.db.service.DynamicTableInfoService;
 import com.webank.blockchain.data.stash.db.service.SysTablesInfoService;
-import com.webank.blockchain.data.stash.entity.ColumnInfo;
-import com.webank.blockchain.data.stash.entity.EntryInfo;
-import com.webank.blockchain.data.stash.utils.CommonUtil;
-import com.webank.blockchain.data.stash.utils.ObjectBuildUtil;
+import com.webank.blockchain.data.stash.exception.DataStashException;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * cucurrent replace into will cause deadlock
+ *
+ * The current table is rebuilt from the top block of its detail table with one insert ... select statement, the
+ * tables are rebuilt in parallel. After a batch only the tables written since the last rebuild are rebuilt.
  */
 @Service
 @Slf4j
@@ -32,7 +40,7 @@ public class RecoverSnapshotService {
     private SysTablesInfoService sysTableInfoService;
 
     @Autowired
-    private DynamicTableInfoService dynamicTableInfoService;
+    private SystemPropertyConfig config;
 
     private Set<String> ledgerTables = new HashSet<String>(){{
         add(DBStaticTableConstants.SYS_BLOCK_2_NONCES_TABLE);
@@ -40,60 +48,86 @@ public class RecoverSnapshotService {
         add(DBStaticTableConstants.SYS_HASH_2_BLOCK_TABLE);
         add(DBStaticTableConstants.SYS_HASH_2_HEADER_TABLE);
     }};
-    public void recoverSnapshotFromDetailTables() {
-        log.info("Start rebuilding current table from detail table");
-        List<SysTablesInfo> tables = sysTableInfoService.selectAllTables();
-        for (SysTablesInfo table : tables) {
-            if(ledgerTables.contains(table.getTableName())){
-                continue;
-            }
-            log.info("table name : {} in sys tables", table.getTableName());
-            // 1. delete detail entry info
-            String detailTableName = CommonUtil.getDetailTableName(table.getTableName());
-            // 2. get block data by block num
-            List<Map<String, Object>> detailEntrys = sysTableInfoService.selectDataForTopBlock(detailTableName);
+    private Set<String> dirtyTables = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor recoverPool;
 
-            if (detailEntrys == null || detailEntrys.isEmpty()) {
-                continue;
-            }
-            for(Map<String, Object> columnMap: detailEntrys){
-                //Build entry
-                EntryInfo entryInfo = new EntryInfo();
-                entryInfo = copyDefaultFields(entryInfo, columnMap);
-                entryInfo = copyOtherFields(entryInfo, columnMap);
-                //Convert to dynamicObject
-                DynamicTableInfo dynamicTableInfo = new DynamicTableInfo();
-                ObjectBuildUtil.buildToDynamicObj(entryInfo, dynamicTableInfo);
-                //Save dynamic object
-                dynamicTableInfoService.save(table.getTableName(), dynamicTableInfo);
-            }
-        }
-        log.info("Rebuilding current table from detail table complete");
+    @PostConstruct
+    private void init() {
+        int threads = Math.max(1, config.getSnapshotThreads());
+        recoverPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new DataStashThreadFactory("recoverSnapshot"));
+        recoverPool.allowCoreThreadTimeOut(true);
     }
 
-    private EntryInfo copyDefaultFields(EntryInfo entryInfo, Map<String, Object> columnMap){
-        entryInfo.setId(Long.parseLong(columnMap.get("_id_").toString()));
-        entryInfo.setHash(columnMap.get("_hash_").toString());
-        entryInfo.setStatus(Integer.valueOf(columnMap.get("_status_").toString()));
-        entryInfo.setNum(Long.valueOf(columnMap.get("_num_").toString()));
+    @PreDestroy
+    private void destroy() {
+        recoverPool.shutdownNow();
+    }
 
-        columnMap.remove("pk_id");
-        columnMap.remove("_id_");
-        columnMap.remove("_hash_");
-        columnMap.remove("_status_");
-        columnMap.remove("_num_");
-        return entryInfo;
+    /**
+     * Called by the writer for every table it writes.
+     */
+    public void markDirty(String tableName) {
+        dirtyTables.add(tableName);
     }
 
-    private EntryInfo copyOtherFields(EntryInfo entryInfo, Map<String, Object> columnMap){
-        List<ColumnInfo> colums = new ArrayList<ColumnInfo>();
-        for (String key : columnMap.keySet()) {
-            ColumnInfo columnInfo = new ColumnInfo();
-            columnInfo.setColumnName(key);
-            columnInfo.setColumnValue(columnMap.get(key).toString());
-            colums.add(columnInfo);
+    /**
+     * Rebuild the current tables of all tables.
+     */
+    public void recoverSnapshotFromDetailTables() {
+        dirtyTables.clear();
+        recover(null);
+    }
+
+    /**
+     * Rebuild the current tables of the tables written since the last rebuild.
+     */
+    public void recoverDirtyTables() {
+        if (dirtyTables.isEmpty()) {
+            return;
+        }
+        Set<String> tables = new HashSet<>();
+        for (String table : dirtyTables) {
+            dirtyTables.remove(table);
+            tables.add(table);
+        }
+        try {
+            recover(tables);
+        } catch (RuntimeException e) {
+            dirtyTables.addAll(tables);
+            throw e;
+        }
+    }
+
+    /**
+     * @param only the tables to rebuild, or null for all tables
+     */
+    private void recover(Set<String> only) {
+        log.info("Start rebuilding current table from detail table");
+        long start = System.currentTimeMillis();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (SysTablesInfo table : sysTableInfoService.selectAllTables()) {
+            String tableName = table.getTableName();
+            if (ledgerTables.contains(tableName) || (only != null && !only.contains(tableName))) {
+                continue;
+            }
+            futures.add(recoverPool.submit(() -> {
+                int rows = sysTableInfoService.recoverTopBlock(tableName);
+                log.debug("table {} rebuilt, {} rows", tableName, rows);
+                return rows;
+            }));
+        }
+        try {
+            for (Future<Integer> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataStashException(e);
+        } catch (ExecutionException e) {
+            throw new DataStashException(e.getCause());
         }
-        entryInfo.setColumns(colums);
-        return entryInfo;
+        log.info("Rebuilding current table of {} tables from detail table complete in {} ms", futures.size(),
+                System.currentTimeMillis() - start);
     }
 }
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.checksum.BlockChecksum;
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.enums.DataStashExceptionCodeEnums;
+import com.webank.blockchain.data.stash.exception.DataStashException;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+import com.webank.blockchain.data.stash.read.MultiSourceBlockReader;
+import com.webank.blockchain.data.stash.utils.BytesUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SecondaryReadManager
+ *
+ * @Description: Reads blocks of the secondary sources on demand, for sampled or quorum verification. Blocks a
+ *               little ahead are read on from the current position, any other block is located through the binlog
+ *               index.
+ *
+ */
+@Service
+@Slf4j
+public class SecondaryReadManager {
+    private static final int MAX_READ_ON = 64;
+
+    @Autowired
+    private SystemPropertyConfig config;
+    @Autowired
+    private BinlogFileCatalog binlogFileCatalog;
+    @Autowired
+    private BlockChecksum blockChecksum;
+    @Autowired
+    private SourceHealthTracker sourceHealthTracker;
+
+    private Map<RemoteServerInfo, MultiSourceBlockReader> readers = new HashMap<>();
+    private Map<RemoteServerInfo, Long> nextBlocks = new HashMap<>();
+
+    /**
+     * @return the block body of the secondary sources which have got the block, crc32 checked
+     */
+    public synchronized List<ByteBuffer> read(long blockNumber) {
+        List<ByteBuffer> frames = readFrames(blockNumber);
+        List<ByteBuffer> blocks = new ArrayList<>(frames.size());
+        for (ByteBuffer frame : frames) {
+            blocks.add(toBlockBodyData(blockNumber, frame));
+        }
+        return blocks;
+    }
+
+    /**
+     * @return the block frame of the secondary sources which have got the block, crc32 included
+     */
+    public synchronized List<ByteBuffer> readFrames(long blockNumber) {
+        List<RemoteServerInfo> secondaries = sourceHealthTracker.getSecondaries();
+        List<ByteBuffer> frames = new ArrayList<>(secondaries.size());
+        for (RemoteServerInfo source : secondaries) {
+            try {
+                ByteBuffer frame = read(source, blockNumber);
+                if (frame != null) {
+                    frames.add(frame);
+                    sourceHealthTracker.onBlock(source, blockNumber);
+                }
+            } catch (IOException e) {
+                log.warn("Read block {} of {} failed: {}", blockNumber, source.getUrl(), e.getMessage());
+                sourceHealthTracker.onError(source);
+                close(source);
+            }
+        }
+        return frames;
+    }
+
+    private ByteBuffer read(RemoteServerInfo source, long blockNumber) throws IOException {
+        MultiSourceBlockReader reader = readers.get(source);
+        Long next = nextBlocks.get(source);
+        //Read on to a block a little ahead, a lagging source stays at its end of binlog
+        if (reader == null || blockNumber < next || blockNumber - next > MAX_READ_ON) {
+            close(source);
+            reader = new MultiSourceBlockReader(Collections.singletonList(source), blockNumber, binlogFileCatalog,
+                    config.getBinlogSuffix());
+            readers.put(source, reader);
+            next = blockNumber;
+            nextBlocks.put(source, next);
+        }
+        while (next <= blockNumber) {
+            List<ByteBuffer> frames = reader.read();
+            if (frames == null) {
+                return null;
+            }
+            ByteBuffer frame = frames.get(0);
+            next = frame.getLong(0) + 1;
+            nextBlocks.put(source, next);
+            if (frame.getLong(0) == blockNumber) {
+                return frame;
+            }
+        }
+        //The block is missing in the binlog
+        close(source);
+        return null;
+    }
+
+    private ByteBuffer toBlockBodyData(long blockNumber, ByteBuffer block) {
+        ByteBuffer data = block.duplicate();
+        data.limit(data.limit() - BinlogConstants.CRC32_LENGTH);
+        data = data.slice();
+        long checksum = BytesUtil.byte4UnsignFromSrcToLong(block, block.limit() - BinlogConstants.CRC32_LENGTH);
+        if (blockChecksum.checksum(data) != checksum) {
+            log.error("Block {}, verify error", blockNumber);
+            throw new DataStashException(DataStashExceptionCodeEnums.DATA_STASH_BINLOG_CRC32_ERROR);
+        }
+        return data;
+    }
+
+    private void close(RemoteServerInfo source) {
+        MultiSourceBlockReader reader = readers.remove(source);
+        nextBlocks.remove(source);
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.debug("Close reader of {} failed: {}", source.getUrl(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    private synchronized void destroy() {
+        for (RemoteServerInfo source : new ArrayList<>(readers.keySet())) {
+            close(source);
+        }
+    }
+}
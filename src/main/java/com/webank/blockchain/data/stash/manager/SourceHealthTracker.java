@@ -0,0 +1,167 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.entity.SourceHealth;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SourceHealthTracker
+ *
+ * @Description: Tracks throughput, errors and the last block seen of every source and selects the primary source,
+ *               the one whose binlog is parsed and stored. With system.selectPrimary=1 the primary is the most up to
+ *               date healthy source, otherwise it's always the first configured source.
+ *
+ */
+@Service
+@Slf4j
+public class SourceHealthTracker {
+    private static final double THROUGHPUT_WEIGHT = 0.3;
+
+    @Autowired
+    private List<RemoteServerInfo> sources;
+    @Autowired
+    private SystemPropertyConfig config;
+
+    private Map<RemoteServerInfo, SourceHealth> healths = new HashMap<>();
+    private RemoteServerInfo primary;
+
+    @PostConstruct
+    private void init() {
+        for (RemoteServerInfo source : sources) {
+            healths.put(source, new SourceHealth().setSource(source));
+        }
+        primary = sources.get(0);
+    }
+
+    public synchronized void onDownload(RemoteServerInfo source, long bytes, long millis) {
+        SourceHealth health = healths.get(source);
+        health.setConsecutiveErrors(0);
+        if (bytes <= 0) {
+            return;
+        }
+        health.setDownloadedBytes(health.getDownloadedBytes() + bytes);
+        double throughput = bytes * 1000.0 / Math.max(1, millis);
+        health.setThroughput(health.getThroughput() == 0 ? throughput
+                : THROUGHPUT_WEIGHT * throughput + (1 - THROUGHPUT_WEIGHT) * health.getThroughput());
+    }
+
+    /**
+     * Record a block known to be on the source, either read from it or the first block of its newest binlog.
+     */
+    public synchronized void onBlock(RemoteServerInfo source, long blockNumber) {
+        SourceHealth health = healths.get(source);
+        health.setConsecutiveErrors(0);
+        if (blockNumber > health.getLastSeenBlock()) {
+            health.setLastSeenBlock(blockNumber);
+        }
+    }
+
+    public synchronized void onError(RemoteServerInfo source) {
+        SourceHealth health = healths.get(source);
+        health.setErrors(health.getErrors() + 1);
+        health.setConsecutiveErrors(health.getConsecutiveErrors() + 1);
+    }
+
+    public synchronized boolean isHealthy(RemoteServerInfo source) {
+        return healths.get(source).getConsecutiveErrors() < config.getSourceMaxErrors();
+    }
+
+    /**
+     * @return the newest block seen on any source, or -1 if no block has been seen yet
+     */
+    public synchronized long getHeadBlock() {
+        long head = -1;
+        for (SourceHealth health : healths.values()) {
+            head = Math.max(head, health.getLastSeenBlock());
+        }
+        return head;
+    }
+
+    public synchronized RemoteServerInfo getPrimary() {
+        return primary;
+    }
+
+    /**
+     * @return the sources other than the primary, in configured order
+     */
+    public synchronized List<RemoteServerInfo> getSecondaries() {
+        List<RemoteServerInfo> secondaries = new ArrayList<>(sources.size() - 1);
+        for (RemoteServerInfo source : sources) {
+            if (source != primary) {
+                secondaries.add(source);
+            }
+        }
+        return secondaries;
+    }
+
+    /**
+     * Select the primary for the next batch. The current primary is kept while it's healthy and lags the most up to
+     * date healthy source by at most system.sourceLagThreshold blocks, so the primary doesn't flap.
+     *
+     * @return the sources, primary first
+     */
+    public synchronized List<RemoteServerInfo> selectPrimary() {
+        if (config.getSelectPrimary() == 1) {
+            RemoteServerInfo best = null;
+            for (RemoteServerInfo source : sources) {
+                if (isHealthy(source) && (best == null || isBetter(source, best))) {
+                    best = source;
+                }
+            }
+            if (best != null && best != primary && (!isHealthy(primary) || healths.get(best).getLastSeenBlock()
+                    - healths.get(primary).getLastSeenBlock() > config.getSourceLagThreshold())) {
+                log.warn("Switch primary source from {} to {}, {}", primary.getUrl(), best.getUrl(), this);
+                primary = best;
+            }
+        }
+        List<RemoteServerInfo> ordered = new ArrayList<>(sources.size());
+        ordered.add(primary);
+        ordered.addAll(getSecondaries());
+        return ordered;
+    }
+
+    private boolean isBetter(RemoteServerInfo source, RemoteServerInfo than) {
+        SourceHealth a = healths.get(source);
+        SourceHealth b = healths.get(than);
+        if (a.getLastSeenBlock() != b.getLastSeenBlock()) {
+            return a.getLastSeenBlock() > b.getLastSeenBlock();
+        }
+        return a.getThroughput() > b.getThroughput();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (RemoteServerInfo source : sources) {
+            SourceHealth health = healths.get(source);
+            sb.append(String.format("[%s: last block %d, %.0f B/s, %d errors] ", source.getUrl(),
+                    health.getLastSeenBlock(), health.getThroughput(), health.getErrors()));
+        }
+        return sb.toString().trim();
+    }
+}
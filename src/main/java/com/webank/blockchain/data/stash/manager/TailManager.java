@@ -0,0 +1,306 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.manager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.fetch.BinlogFileDir;
+import com.webank.blockchain.data.stash.fetch.HttpFileScanner;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+import com.webank.blockchain.data.stash.read.BlockBufferPool;
+import com.webank.blockchain.data.stash.read.BlockFrameAssembler;
+import com.webank.blockchain.data.stash.read.PooledBuffer;
+import com.webank.blockchain.data.stash.thread.InFlightWindow;
+
+import cn.hutool.http.Header;
+import cn.hutool.http.HttpException;
+import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * TailManager
+ *
+ * @Description: Once the reader has caught up, re-polls the newest binlog of every source with a Range request and
+ *               hands the blocks to the block handler as soon as their bytes arrive. The local binlog is only
+ *               appended as a side copy, so the normal read loop continues from it afterwards.
+ *
+ */
+@Service
+@Slf4j
+public class TailManager {
+    private static final long ROLLOVER_CHECK_INTERVAL = 5000;
+
+    @Autowired
+    private SystemPropertyConfig systemPropertyConfig;
+    @Autowired
+    private ReadPropertyConfig readPropertyConfig;
+    @Autowired
+    private BlockReadManager blockReadManager;
+    @Autowired
+    private BinlogFileCatalog binlogFileCatalog;
+    @Autowired
+    private BlockBufferPool blockBufferPool;
+
+    private List<TailSource> tails;
+    private InFlightWindow window;
+    private long next;
+    private boolean broken;
+
+    public boolean isEnabled() {
+        return readPropertyConfig.getTail().equalsIgnoreCase("yes");
+    }
+
+    /**
+     * Tail the newest binlog until the node starts a new binlog file, no block arrives for read.tailIdleTimeout,
+     * or an error happens. The normal read loop takes over afterwards. The same sources as the read loop are
+     * tailed, the primary first, so in sampling or quorum mode only the primary is tailed.
+     *
+     * @return blocks saved
+     */
+    public synchronized int tail() throws Exception {
+        next = blockReadManager.getReadPosition();
+        List<RemoteServerInfo> readSources = blockReadManager.readSources();
+        tails = new ArrayList<>(readSources.size());
+        window = blockReadManager.newWindow(next);
+        broken = false;
+        for (RemoteServerInfo server : readSources) {
+            TailSource tail = open(server, next);
+            if (tail == null) {
+                log.info("Reader has not reached the newest binlog of {}, skip tailing", server.getUrl());
+                tails.forEach(TailSource::release);
+                return 0;
+            }
+            tails.add(tail);
+        }
+        log.info("Start tailing binlog {} from block {}", tails.get(0).fileIndex, next);
+        int total = 0;
+        long idleSince = System.currentTimeMillis();
+        long lastRolloverCheck = idleSince;
+        try {
+            drain();
+            while (!broken) {
+                long bytes = 0;
+                for (TailSource tail : tails) {
+                    bytes += poll(tail);
+                }
+                total += flush();
+                long now = System.currentTimeMillis();
+                if (bytes > 0) {
+                    idleSince = now;
+                    continue;
+                }
+                if (now - idleSince >= readPropertyConfig.getTailIdleTimeout()) {
+                    break;
+                }
+                if (now - lastRolloverCheck >= ROLLOVER_CHECK_INTERVAL) {
+                    lastRolloverCheck = now;
+                    if (rolledOver(tails.get(0))) {
+                        log.info("New binlog found, stop tailing");
+                        break;
+                    }
+                }
+                Thread.sleep(readPropertyConfig.getTailInterval());
+            }
+        } catch (IOException | HttpException e) {
+            log.error("Tailing binlog failed, back to normal read", e);
+        }
+        total += flush();
+        tails.forEach(TailSource::release);
+        log.info("Stop tailing at block {}, {} blocks saved", next, total);
+        return total;
+    }
+
+    private TailSource open(RemoteServerInfo server, long blockNumber) throws IOException {
+        Long fileIndex = binlogFileCatalog.last(server);
+        if (fileIndex == null || fileIndex > blockNumber) {
+            return null;
+        }
+        File file = new File(server.getLocalFilePath() + fileIndex + "." + systemPropertyConfig.getBinlogSuffix());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long offset = length < BinlogConstants.BLOCK_LENGTH ? 0 : locate(raf, blockNumber);
+            TailSource tail = new TailSource(server, fileIndex, file,
+                    new BlockFrameAssembler(offset == 0 ? BinlogConstants.BLOCK_LENGTH : 0), blockBufferPool);
+            //Bytes of blocks not stored yet, including a partial block at the end
+            byte[] pending = new byte[(int) (length - offset)];
+            raf.seek(offset);
+            raf.readFully(pending);
+            tail.receive(pending, pending.length);
+            return tail;
+        }
+    }
+
+    /**
+     * Offset of the given block in the binlog, or the end of the last complete block if it's not there yet.
+     */
+    private long locate(RandomAccessFile raf, long blockNumber) throws IOException {
+        long length = raf.length();
+        long position = BinlogConstants.BLOCK_LENGTH;
+        while (position + BinlogConstants.BLOCK_LENGTH <= length) {
+            raf.seek(position);
+            int blockLength = raf.readInt();
+            if (position + BinlogConstants.BLOCK_LENGTH + blockLength > length) {
+                break;
+            }
+            if (raf.readLong() >= blockNumber) {
+                return position;
+            }
+            position += BinlogConstants.BLOCK_LENGTH + blockLength;
+        }
+        return position;
+    }
+
+    private long poll(TailSource tail) throws IOException, InterruptedException, ExecutionException {
+        String url = tail.server.getUrl() + tail.fileIndex + "." + systemPropertyConfig.getBinlogSuffix();
+        final HttpResponse response = HttpRequest.get(url).timeout(30 * 1000)
+                .header("Range", "bytes=" + tail.file.length() + "-").header(Header.USER_AGENT, "Data Stash http")
+                .header(Header.CONNECTION, "keep-alive").executeAsync();
+        try {
+            if (response.getStatus() == 416) {
+                return 0;
+            }
+            if (response.getStatus() != 206) {
+                throw new HttpException("Server response error with status code: [{}]", response.getStatus());
+            }
+            long total = 0;
+            try (InputStream in = response.bodyStream();
+                    FileOutputStream out = new FileOutputStream(tail.file, true)) {
+                byte[] chunk = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    //Keep the local binlog as a side copy for the normal read loop
+                    out.write(chunk, 0, n);
+                    tail.receive(chunk, n);
+                    total += n;
+                    drain();
+                }
+            }
+            return total;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Hand every block which has arrived from all sources to the block handler.
+     */
+    private void drain() throws InterruptedException, ExecutionException {
+        while (!broken) {
+            for (TailSource tail : tails) {
+                while (!tail.frames.isEmpty() && blockNumber(tail.frames.peek()) < next) {
+                    tail.frames.poll().release();
+                }
+                if (tail.frames.isEmpty()) {
+                    return;
+                }
+                if (blockNumber(tail.frames.peek()) != next) {
+                    log.warn("Block {} is missing in {}", next, tail.server.getUrl());
+                    broken = true;
+                    return;
+                }
+            }
+            List<ByteBuffer> blocks = new ArrayList<>(tails.size());
+            for (TailSource tail : tails) {
+                blocks.add(tail.frames.peek().buffer());
+            }
+            blocks = blockReadManager.withQuorum(next, blocks);
+            if (blocks == null) {
+                log.info("Block {} has not reached the quorum, stop tailing", next);
+                broken = true;
+                return;
+            }
+            List<PooledBuffer> frames = new ArrayList<>(tails.size());
+            for (TailSource tail : tails) {
+                frames.add(tail.frames.poll());
+            }
+            //The parsed block may refer to the frame bytes until it's stored
+            blockReadManager.handleBlock(window, next, blocks)
+                    .whenComplete((blockInfo, e) -> frames.forEach(PooledBuffer::release));
+            next++;
+        }
+    }
+
+    private int flush() throws Exception {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        int saved = blockReadManager.finishBatch(window);
+        window = blockReadManager.newWindow(next);
+        log.debug("block buffer pool {}", blockBufferPool);
+        return saved;
+    }
+
+    private boolean rolledOver(TailSource tail) throws IOException {
+        BinlogFileDir dir = HttpFileScanner.scan(tail.server.getUrl());
+        return dir.getSize() > 0 && dir.getBinlogFileInfoList().last().getIndex() > tail.fileIndex;
+    }
+
+    private static long blockNumber(PooledBuffer frame) {
+        return frame.buffer().getLong(0);
+    }
+
+    private static class TailSource {
+        private RemoteServerInfo server;
+        private long fileIndex;
+        private File file;
+        private BlockFrameAssembler assembler;
+        private BlockBufferPool pool;
+        private ArrayDeque<PooledBuffer> frames = new ArrayDeque<>();
+
+        private TailSource(RemoteServerInfo server, long fileIndex, File file, BlockFrameAssembler assembler,
+                BlockBufferPool pool) {
+            this.server = server;
+            this.fileIndex = fileIndex;
+            this.file = file;
+            this.assembler = assembler;
+            this.pool = pool;
+        }
+
+        private void receive(byte[] bytes, int length) {
+            assembler.append(bytes, 0, length);
+            PooledBuffer frame;
+            while ((frame = assembler.nextFrame(pool)) != null) {
+                frames.add(frame);
+            }
+        }
+
+        /**
+         * Give back the frames not handed to the block handler
+         */
+        private void release() {
+            PooledBuffer frame;
+            while ((frame = frames.poll()) != null) {
+                frame.release();
+            }
+        }
+    }
+
+}
@@ -13,14 +13,20 @@
  */
 package com.webank.blockchain.data.stash.parser;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 
-import com.webank.blockchain.data.stash.constants.DBDynamicTableConstants;
-import com.webank.blockchain.data.stash.utils.FlagUtils;
-import org.apache.commons.lang3.StringUtils;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.webank.blockchain.data.stash.aspect.UseTime;
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
 import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
 import com.webank.blockchain.data.stash.entity.ColumnInfo;
 import com.webank.blockchain.data.stash.entity.EntryInfo;
@@ -28,9 +34,7 @@ import com.webank.blockchain.data.stash.entity.RtnObjInfo;
 import com.webank.blockchain.data.stash.entity.TableDataInfo;
 import com.webank.blockchain.data.stash.exception.DataStashException;
 import com.webank.blockchain.data.stash.utils.BytesUtil;
-import com.webank.blockchain.data.stash.utils.JsonUtils;
 
-import cn.hutool.core.util.HexUtil;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -45,8 +49,49 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class BlockBytesParser {
 
-    @UseTime
+    @Autowired(required = false)
+    private ReadPropertyConfig readPropertyConfig;
+
+    private ForkJoinPool parsePool;
+    private SchemaRegistry schemaRegistry = new SchemaRegistry();
+
+    @PostConstruct
+    private void init() {
+        if (readPropertyConfig != null && "yes".equalsIgnoreCase(readPropertyConfig.getParallelParse())) {
+            parsePool = new ForkJoinPool(readPropertyConfig.getParseThreads(), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("blockParse-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (parsePool != null) {
+            parsePool.shutdown();
+        }
+    }
+
     public BinlogBlockInfo getBinlogBlockInfo(byte[] blockBytes) throws DataStashException {
+        return getBinlogBlockInfo(ByteBuffer.wrap(blockBytes));
+    }
+
+    /**
+     * Parse the block body, the crc32 excluded. Absolute reads are used, so the block may be a slice over the
+     * mapped binlog and its position is not changed.
+     */
+    @UseTime
+    public BinlogBlockInfo getBinlogBlockInfo(ByteBuffer blockBytes) throws DataStashException {
+        return getBinlogBlockInfo(blockBytes, readPropertyConfig != null
+                && "yes".equalsIgnoreCase(readPropertyConfig.getLazyParse()));
+    }
+
+    /**
+     * @param lazy if true, the column values are views of the block and decoded when they're read, the block must
+     *            not be modified while the entries are in use. Otherwise the values are decoded here.
+     */
+    public BinlogBlockInfo getBinlogBlockInfo(ByteBuffer blockBytes, boolean lazy) throws DataStashException {
 
         BinlogBlockInfo binlogBlockInfo = new BinlogBlockInfo();
 
@@ -60,17 +105,17 @@ public class BlockBytesParser {
 
         int dataIndex = 12;
         log.debug("data count : {}", dataCount);
+        if (parsePool != null && dataCount >= readPropertyConfig.getParallelParseThreshold()) {
+            parseParallel(binlogBlockInfo, scanTableSections(blockBytes, dataIndex, dataCount), blockBytes, lazy);
+            return binlogBlockInfo;
+        }
         for (int i = 0; i < dataCount; i++) {
 
-            int nameLen = blockBytes[dataIndex] & 0xFF;
-
-            byte[] tableNameBytes = BytesUtil.subBytes(blockBytes, dataIndex + 1, nameLen);
-            String tableName = new String(tableNameBytes);
-            log.debug("tableName: {}", tableName);
+            TableSection section = readTableSection(blockBytes, dataIndex);
 
-            RtnObjInfo<TableDataInfo> blockData = processBlockData(tableName, blockBytes, dataIndex, blockNum, nameLen);
+            RtnObjInfo<TableDataInfo> blockData = processBlockData(section, blockBytes, blockNum, lazy);
 
-            binlogBlockInfo.getTables().put(tableName, blockData.getObj());
+            binlogBlockInfo.getTables().put(section.tableName, blockData.getObj());
 
             dataIndex = blockData.getIndex();
         }
@@ -78,24 +123,78 @@ public class BlockBytesParser {
         return binlogBlockInfo;
     }
 
-    private RtnObjInfo<TableDataInfo> processBlockData(String tableName, byte[] blockBytes, int dataIndex,
-            long blockNum, int tableNameLen) throws DataStashException {
+    /**
+     * Find where every table section starts by skipping over the length prefixed values, nothing is decoded but
+     * the table names and fields.
+     */
+    private List<TableSection> scanTableSections(ByteBuffer blockBytes, int dataIndex, int dataCount) {
+        List<TableSection> sections = new ArrayList<>(dataCount);
+        for (int i = 0; i < dataCount; i++) {
+            TableSection section = readTableSection(blockBytes, dataIndex);
+            sections.add(section);
+            int entryIndex = skipEntrys(blockBytes, section.entryIndex, section.schema);
+            dataIndex = skipEntrys(blockBytes, entryIndex, section.schema);
+        }
+        return sections;
+    }
+
+    private int skipEntrys(ByteBuffer blockBytes, int entryIndex, TableSchema schema) {
+        int entryCount = BytesUtil.byte4FromSrcToInt(blockBytes, entryIndex);
+        entryIndex += 4;
+        for (int i = 0; i < entryCount; i++) {
+            int settedCount = schema.layout(blockBytes, entryIndex + 9).getColumnCount();
+            entryIndex += 9 + schema.getUsedFlagBytesCount();
+            for (int j = 0; j < settedCount; j++) {
+                entryIndex += BytesUtil.byte4FromSrcToInt(blockBytes, entryIndex) + 4;
+            }
+        }
+        return entryIndex;
+    }
+
+    /**
+     * Decode the table sections on the parse pool, they're merged in the order of the block.
+     */
+    private void parseParallel(BinlogBlockInfo binlogBlockInfo, List<TableSection> sections, ByteBuffer blockBytes,
+            boolean lazy) {
+        long blockNum = binlogBlockInfo.getBlockNum();
+        List<ForkJoinTask<RtnObjInfo<TableDataInfo>>> tasks = new ArrayList<>(sections.size());
+        for (TableSection section : sections) {
+            tasks.add(parsePool.submit(() -> processBlockData(section, blockBytes, blockNum, lazy)));
+        }
+        for (int i = 0; i < sections.size(); i++) {
+            binlogBlockInfo.getTables().put(sections.get(i).tableName, tasks.get(i).join().getObj());
+        }
+    }
+
+    private TableSection readTableSection(ByteBuffer blockBytes, int dataIndex) {
+        int nameLen = blockBytes.get(dataIndex) & 0xFF;
+
+        byte[] tableNameBytes = BytesUtil.subBytes(blockBytes, dataIndex + 1, nameLen);
+        String tableName = new String(tableNameBytes);
+        log.debug("tableName: {}", tableName);
+
+        int fieldsLen = BytesUtil.byte4FromSrcToInt(blockBytes, dataIndex + nameLen + 1);
+        TableSchema schema = fieldsProcess(tableName, blockBytes, dataIndex + nameLen + 5, fieldsLen);
+        return new TableSection(tableName, schema, dataIndex + nameLen + fieldsLen + 5);
+    }
+
+    private RtnObjInfo<TableDataInfo> processBlockData(TableSection section, ByteBuffer blockBytes, long blockNum,
+            boolean lazy) throws DataStashException {
 
         RtnObjInfo<TableDataInfo> blockDataRtn = new RtnObjInfo<>();
 
-        // 1. get table fields
-        int fieldsLen = BytesUtil.byte4FromSrcToInt(blockBytes, dataIndex + tableNameLen + 1);
-        String[] fields = fieldsProcess(blockBytes, dataIndex + tableNameLen + 5, fieldsLen);
+        // 1. get table schema
+        TableSchema schema = section.schema;
 
         // 2. process dirty entry
-        int dirtyEntryCount = BytesUtil.byte4FromSrcToInt(blockBytes, dataIndex + tableNameLen + fieldsLen + 5);
+        int dirtyEntryCount = BytesUtil.byte4FromSrcToInt(blockBytes, section.entryIndex);
         log.debug("block height {}, dirtyEntryCount: {}", blockNum, dirtyEntryCount);
 
-        int entryIndex = dataIndex + tableNameLen + fieldsLen + 9;
+        int entryIndex = section.entryIndex + 4;
 
         TreeSet<EntryInfo> dirtyEntrys = new TreeSet<>();
         for (int i = 0; i < dirtyEntryCount; i++) {
-            RtnObjInfo<EntryInfo> entryData = processEntry(tableName, fields, blockBytes, entryIndex, blockNum);
+            RtnObjInfo<EntryInfo> entryData = processEntry(schema, blockBytes, entryIndex, blockNum, lazy);
             dirtyEntrys.add(entryData.getObj());
             entryIndex = entryData.getIndex();
         }
@@ -108,7 +207,7 @@ public class BlockBytesParser {
 
         TreeSet<EntryInfo> newEntrys = new TreeSet<>();
         for (int i = 0; i < newEntryCount; i++) {
-            RtnObjInfo<EntryInfo> entryData = processEntry(tableName, fields, blockBytes, entryIndex, blockNum);
+            RtnObjInfo<EntryInfo> entryData = processEntry(schema, blockBytes, entryIndex, blockNum, lazy);
             newEntrys.add(entryData.getObj());
             entryIndex = entryData.getIndex();
         }
@@ -124,8 +223,8 @@ public class BlockBytesParser {
 
     }
 
-    private RtnObjInfo<EntryInfo> processEntry(String tableName, String[] allFields, byte[] binlogBytes, int entryIndex,
-            long blockNum) throws DataStashException {
+    private RtnObjInfo<EntryInfo> processEntry(TableSchema schema, ByteBuffer binlogBytes, int entryIndex,
+            long blockNum, boolean lazy) throws DataStashException {
 
         RtnObjInfo<EntryInfo> entryData = new RtnObjInfo<>();
         EntryInfo entry = new EntryInfo();
@@ -135,47 +234,33 @@ public class BlockBytesParser {
         entry.setId(id);
 
         // 2. get entry status
-        int status = binlogBytes[entryIndex + 8] & 0xFF;
+        int status = binlogBytes.get(entryIndex + 8) & 0xFF;
         entry.setStatus(status);
 
         // 3. set block num
         entry.setNum(blockNum);
 
-        // 4. handle usedFlags
-        int usedFlagBytesCount = (allFields.length - 3)/8 + 1;
-        byte[] usedFlags = new byte[usedFlagBytesCount];
-        for(int i=0;i<usedFlagBytesCount;i++){
-            usedFlags[i] = binlogBytes[entryIndex + 9 + i];
-        }
-        // 5. get other column value
-        int valueIndex = entryIndex + 9 + usedFlagBytesCount;
-        List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
-        List<byte[]> columnBytes = new ArrayList<byte[]>();
-        Map<String, ColumnInfo> entryContext = new HashMap<>();
-
-        String[] onlySettedFields = FlagUtils.onlySettedFields(allFields, usedFlags);
+        // 4. handle usedFlags, the layout is cached by the schema
+        TableSchema.ColumnLayout layout = schema.layout(binlogBytes, entryIndex + 9);
+        // 5. get other column value, as views of the block
+        int valueIndex = entryIndex + 9 + schema.getUsedFlagBytesCount();
+        int columnCount = layout.getColumnCount();
+        List<ColumnInfo> columns = new ArrayList<ColumnInfo>(columnCount);
 
-        for (int i = 0; i < onlySettedFields.length; i++) {
+        for (int i = 0; i < columnCount; i++) {
             int valueLen = BytesUtil.byte4FromSrcToInt(binlogBytes, valueIndex);
-            byte[] b = BytesUtil.subBytes(binlogBytes, valueIndex + 4, valueLen);
-            String value = new String(b);
-            ColumnInfo columnInfo = new ColumnInfo();
-            columnInfo.setColumnName(allFields[i]);
-            columnInfo.setColumnValue(value);
-
-            columns.add(columnInfo);
-            columnBytes.add(b);
-            entryContext.put(allFields[i], columnInfo);
-
+            columns.add(new ColumnInfo(schema.getField(i), binlogBytes, valueIndex + 4, valueLen));
             valueIndex = valueIndex + valueLen + 4;
         }
 
-        //6. Convert binary data
-        for (int i = 0; i < onlySettedFields.length; i++) {
+        //6. Mark binary data, read as hex
+        for (int i = 0; i < columnCount; i++) {
             ColumnInfo columnInfo = columns.get(i);
-            byte[] b = columnBytes.get(i);
-            if (isBinaryField(tableName, allFields[i], entryContext)){
-                columnInfo.setColumnValue(HexUtil.encodeHexStr(b));
+            if (isBinaryField(schema.getBinaryRule(i), columnInfo, columns, layout)){
+                columnInfo.setBinary(true);
+            }
+            if (!lazy) {
+                columnInfo.materialize();
             }
         }
 
@@ -186,37 +271,37 @@ public class BlockBytesParser {
         return entryData;
     }
 
-    private boolean isBinaryField(String tableName, String fieldName, Map<String, ColumnInfo> entryContext){
-        String utf8FieldValue = entryContext.get(fieldName).getColumnValue();
-        if (tableName.equalsIgnoreCase("_sys_hash_2_block_")
-                || tableName.equalsIgnoreCase("_sys_block_2_nonces_")
-        ){
-            if(fieldName.equalsIgnoreCase("value")){
-                return !StringUtils.startsWithIgnoreCase(utf8FieldValue, "0x");
-            }
-        }
-
-        if (tableName.equalsIgnoreCase("_sys_hash_2_header_")){
-            if(fieldName.equalsIgnoreCase("value") || fieldName.equalsIgnoreCase("sigs")
-                    ){
-                return !StringUtils.startsWithIgnoreCase(utf8FieldValue, "0x");
-            }
+    private boolean isBinaryField(byte binaryRule, ColumnInfo column, List<ColumnInfo> columns,
+            TableSchema.ColumnLayout layout){
+        if (binaryRule == TableSchema.BINARY) {
+            return !column.hasHexPrefix();
         }
-
-        if(tableName.startsWith(DBDynamicTableConstants.CONTRACT_DATA_PRE_FIX) && fieldName.equalsIgnoreCase("value")){
-            ColumnInfo keyColumn = entryContext.get("key");
-            if(keyColumn == null) return false;
-            String keyColumnVal = keyColumn.getColumnValue();
+        if (binaryRule == TableSchema.BINARY_CODE) {
+            if(layout.getKeyIndex() < 0) return false;
+            String keyColumnVal = columns.get(layout.getKeyIndex()).getColumnValue();
             if("code".equalsIgnoreCase(keyColumnVal) || "codeHash".equalsIgnoreCase(keyColumnVal)){
-                return !StringUtils.startsWithIgnoreCase(utf8FieldValue, "0x");
+                return !column.hasHexPrefix();
             }
         }
         return false;
     }
 
-    private String[] fieldsProcess(byte[] binlogBytes, int fieldsIndex, int fieldsLen) {
+    private TableSchema fieldsProcess(String tableName, ByteBuffer binlogBytes, int fieldsIndex, int fieldsLen) {
         String fieldsStr = new String(BytesUtil.subBytes(binlogBytes, fieldsIndex, fieldsLen));
-        log.debug("fieldsStr : {}", JsonUtils.toJson(fieldsStr));
-        return fieldsStr.split(",");
+        log.debug("fieldsStr : {}", fieldsStr);
+        return schemaRegistry.getSchema(tableName, fieldsStr);
+    }
+
+    private static class TableSection {
+        private String tableName;
+        private TableSchema schema;
+        //Index of the dirty entry count
+        private int entryIndex;
+
+        private TableSection(String tableName, TableSchema schema, int entryIndex) {
+            this.tableName = tableName;
+            this.schema = schema;
+            this.entryIndex = entryIndex;
+        }
     }
 }
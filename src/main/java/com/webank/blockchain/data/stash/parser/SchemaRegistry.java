@@ -0,0 +1,90 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webank.blockchain.data.stash.constants.DBDynamicTableConstants;
+import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
+
+/**
+ * SchemaRegistry
+ *
+ * @Description: Table schemas by binary rule kind of the table and field list. Tables whose columns follow the
+ *               same rules share a schema, so the thousands of contract tables need only a few.
+ *
+ */
+public class SchemaRegistry {
+
+    private enum TableKind {
+        PLAIN, HASH_VALUE, HEADER, CONTRACT_DATA
+    }
+
+    private final Map<TableKind, Map<String, TableSchema>> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * @param fieldsStr comma separated fields of the table section
+     */
+    public TableSchema getSchema(String tableName, String fieldsStr) {
+        TableKind kind = kindOf(tableName);
+        Map<String, TableSchema> kindSchemas = schemas.computeIfAbsent(kind, k -> new ConcurrentHashMap<>());
+        TableSchema schema = kindSchemas.get(fieldsStr);
+        if (schema == null) {
+            schema = kindSchemas.computeIfAbsent(fieldsStr, f -> newSchema(kind, f.split(",")));
+        }
+        return schema;
+    }
+
+    private TableKind kindOf(String tableName) {
+        if (tableName.equalsIgnoreCase(DBStaticTableConstants.SYS_HASH_2_BLOCK_TABLE)
+                || tableName.equalsIgnoreCase(DBStaticTableConstants.SYS_BLOCK_2_NONCES_TABLE)) {
+            return TableKind.HASH_VALUE;
+        }
+        if (tableName.equalsIgnoreCase(DBStaticTableConstants.SYS_HASH_2_HEADER_TABLE)) {
+            return TableKind.HEADER;
+        }
+        if (tableName.startsWith(DBDynamicTableConstants.CONTRACT_DATA_PRE_FIX)) {
+            return TableKind.CONTRACT_DATA;
+        }
+        return TableKind.PLAIN;
+    }
+
+    private TableSchema newSchema(TableKind kind, String[] fields) {
+        byte[] binaryRules = new byte[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i];
+            switch (kind) {
+            case HASH_VALUE:
+                if (field.equalsIgnoreCase("value")) {
+                    binaryRules[i] = TableSchema.BINARY;
+                }
+                break;
+            case HEADER:
+                if (field.equalsIgnoreCase("value") || field.equalsIgnoreCase("sigs")) {
+                    binaryRules[i] = TableSchema.BINARY;
+                }
+                break;
+            case CONTRACT_DATA:
+                if (field.equalsIgnoreCase("value")) {
+                    binaryRules[i] = TableSchema.BINARY_CODE;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        return new TableSchema(fields, binaryRules);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webank.blockchain.data.stash.utils.FlagUtils;
+
+/**
+ * TableSchema
+ *
+ * @Description: Decoding layout of the entries of one field list. The field names are split and interned once,
+ *               the binary columns are classified once and the column layout of every used flags bitmap is cached.
+ *
+ */
+public class TableSchema {
+
+    /** Value is binary unless it starts with 0x */
+    public static final byte BINARY = 1;
+    /** Value is binary unless it starts with 0x, if the key column is code or codeHash */
+    public static final byte BINARY_CODE = 2;
+
+    //Bitmaps up to 2 bytes are cached in an array indexed by the bitmap, up to 8 bytes in a map
+    private static final int MAX_INDEXED_FLAG_BYTES = 2;
+    private static final int MAX_CACHED_FLAG_BYTES = 8;
+
+    private final String[] fields;
+    private final int usedFlagBytesCount;
+    private final byte[] binaryRules;
+    private final int keyIndex;
+    //Layouts are immutable, a racing thread at worst builds the same layout again
+    private final ColumnLayout[] indexedLayouts;
+    private final Map<Long, ColumnLayout> layouts = new ConcurrentHashMap<>();
+
+    public TableSchema(String[] fields, byte[] binaryRules) {
+        this.fields = fields;
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].intern();
+        }
+        this.usedFlagBytesCount = (fields.length - 3) / 8 + 1;
+        this.binaryRules = binaryRules;
+        int key = -1;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals("key")) {
+                key = i;
+                break;
+            }
+        }
+        this.keyIndex = key;
+        this.indexedLayouts = usedFlagBytesCount <= MAX_INDEXED_FLAG_BYTES
+                ? new ColumnLayout[1 << (usedFlagBytesCount * 8)] : null;
+    }
+
+    public String[] getFields() {
+        return fields;
+    }
+
+    public String getField(int i) {
+        return fields[i];
+    }
+
+    public int getUsedFlagBytesCount() {
+        return usedFlagBytesCount;
+    }
+
+    public byte getBinaryRule(int i) {
+        return binaryRules[i];
+    }
+
+    /**
+     * @param flagsIndex index of the used flags of the entry
+     */
+    public ColumnLayout layout(ByteBuffer block, int flagsIndex) {
+        if (usedFlagBytesCount > MAX_CACHED_FLAG_BYTES) {
+            return newLayout(block, flagsIndex);
+        }
+        long bitmap = 0;
+        for (int i = 0; i < usedFlagBytesCount; i++) {
+            bitmap = bitmap << 8 | (block.get(flagsIndex + i) & 0xFF);
+        }
+        if (indexedLayouts != null) {
+            ColumnLayout layout = indexedLayouts[(int) bitmap];
+            if (layout == null) {
+                layout = newLayout(block, flagsIndex);
+                indexedLayouts[(int) bitmap] = layout;
+            }
+            return layout;
+        }
+        ColumnLayout layout = layouts.get(bitmap);
+        if (layout == null) {
+            layout = newLayout(block, flagsIndex);
+            layouts.put(bitmap, layout);
+        }
+        return layout;
+    }
+
+    private ColumnLayout newLayout(ByteBuffer block, int flagsIndex) {
+        int columnCount = FlagUtils.countSettedFields(fields.length, block, flagsIndex);
+        return new ColumnLayout(columnCount, keyIndex < columnCount ? keyIndex : -1);
+    }
+
+    /**
+     * Columns of an entry. As the parser always did, the setted columns are named by the leading fields.
+     */
+    public static class ColumnLayout {
+        private final int columnCount;
+        private final int keyIndex;
+
+        private ColumnLayout(int columnCount, int keyIndex) {
+            this.columnCount = columnCount;
+            this.keyIndex = keyIndex;
+        }
+
+        public int getColumnCount() {
+            return columnCount;
+        }
+
+        /**
+         * @return index of the key column, or -1 if the entry has none
+         */
+        public int getKeyIndex() {
+            return keyIndex;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.thread.DataStashThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sidecar index of a binlog, <binlog>.idx. Entry i is the 8 bytes file offset of block firstBlock + i, so the
+ * offset of a block is a single positioned read. Entries are appended while the binlog is read, callers validate
+ * the block found at an offset and fall back to scanning if the index is stale.
+ */
+@Slf4j
+public class BinlogBlockIndex implements Closeable {
+
+    public static final String SUFFIX = ".idx";
+    private static final int ENTRY_LENGTH = 8;
+    private static final Set<String> REBUILDING = ConcurrentHashMap.newKeySet();
+    private static final ThreadPoolExecutor REBUILDER = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new DataStashThreadFactory("binlogIndex"));
+
+    static {
+        REBUILDER.allowCoreThreadTimeOut(true);
+    }
+
+    private final long firstBlock;
+    private final FileChannel channel;
+    private final ByteBuffer pending = ByteBuffer.allocate(ENTRY_LENGTH * 1024);
+    private long count;
+    private long lastOffset = -1;
+
+    public BinlogBlockIndex(File binlog, long firstBlock) throws IOException{
+        this.firstBlock = firstBlock;
+        this.channel = FileChannel.open(indexFile(binlog).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        this.count = size / ENTRY_LENGTH;
+        //Drop an entry torn by a crash
+        if(size % ENTRY_LENGTH != 0){
+            channel.truncate(count * ENTRY_LENGTH);
+        }
+        if(count > 0){
+            lastOffset = read(count - 1);
+        }
+    }
+
+    public static File indexFile(File binlog){
+        return new File(binlog.getPath() + SUFFIX);
+    }
+
+    /**
+     * @return offset of the block, or -1 if it's not indexed
+     */
+    public long offset(long blockNumber) throws IOException{
+        long i = blockNumber - firstBlock;
+        if(i < 0 || i >= count) return -1;
+        flush();
+        return read(i);
+    }
+
+    /**
+     * @return the last indexed block, or -1 if the index is empty
+     */
+    public long lastBlock(){
+        return count == 0 ? -1 : firstBlock + count - 1;
+    }
+
+    public long lastOffset(){
+        return lastOffset;
+    }
+
+    /**
+     * Record the offset of the next block, blocks already indexed are ignored.
+     */
+    public void append(long blockNumber, long offset) throws IOException{
+        if(blockNumber != firstBlock + count) return;
+        pending.putLong(offset);
+        count++;
+        lastOffset = offset;
+        if(!pending.hasRemaining()){
+            flush();
+        }
+    }
+
+    public void flush() throws IOException{
+        if(pending.position() == 0) return;
+        long position = (count - pending.position() / ENTRY_LENGTH) * ENTRY_LENGTH;
+        pending.flip();
+        while(pending.hasRemaining()){
+            position += channel.write(pending, position);
+        }
+        pending.clear();
+    }
+
+    private long read(long i) throws IOException{
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_LENGTH);
+        long position = i * ENTRY_LENGTH;
+        while(entry.hasRemaining()){
+            if(channel.read(entry, position + entry.position()) < 0){
+                throw new IOException("binlog index truncated");
+            }
+        }
+        return entry.getLong(0);
+    }
+
+    @Override
+    public void close() throws IOException{
+        try{
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Rebuild the whole index of the binlog in background, the new index replaces the old one atomically.
+     */
+    public static void rebuildAsync(File binlog, long firstBlock){
+        if(!REBUILDING.add(binlog.getPath())) return;
+        REBUILDER.execute(() -> {
+            try{
+                rebuild(binlog, firstBlock);
+            }
+            catch (Exception ex){
+                log.warn("Rebuild index of {} failed: {}", binlog.getName(), ex.getMessage());
+            }
+            finally {
+                REBUILDING.remove(binlog.getPath());
+            }
+        });
+    }
+
+    static void rebuild(File binlog, long firstBlock) throws IOException{
+        File index = indexFile(binlog);
+        File tmp = new File(index.getPath() + ".tmp");
+        long expected = firstBlock;
+        try(MappedBinlogFile mapped = new MappedBinlogFile(binlog);
+            FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer entries = ByteBuffer.allocate(ENTRY_LENGTH * 1024);
+            mapped.seek(BinlogConstants.BLOCK_LENGTH);
+            long offset = mapped.position();
+            ByteBuffer frame;
+            while((frame = mapped.nextFrame()) != null && frame.getLong(0) == expected){
+                entries.putLong(offset);
+                if(!entries.hasRemaining()){
+                    writeFully(out, entries);
+                }
+                expected++;
+                offset = mapped.position();
+            }
+            writeFully(out, entries);
+        }
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        log.info("Index of {} rebuilt, {} blocks", binlog.getName(), expected - firstBlock);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer entries) throws IOException{
+        entries.flip();
+        while(entries.hasRemaining()){
+            out.write(entries);
+        }
+        entries.clear();
+    }
+}
@@ -0,0 +1,87 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.utils.BinlogFileUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory index of the local binlog file ids of every source. The directory is listed once on first use, then
+ * the downloader, the cleaner and the binlog watcher keep it current, so lookups are done without touching the
+ * file system.
+ */
+@Slf4j
+public class BinlogFileCatalog {
+
+    private final String binlogSuffix;
+    private final Map<String, ConcurrentSkipListSet<Long>> catalogs = new ConcurrentHashMap<>();
+
+    public BinlogFileCatalog(String binlogSuffix){
+        this.binlogSuffix = binlogSuffix;
+    }
+
+    /**
+     * @return read only view of the file ids of the source, it reflects later changes
+     */
+    public NavigableSet<Long> getFileIds(RemoteServerInfo source){
+        return Collections.unmodifiableNavigableSet(files(source));
+    }
+
+    public Long floor(RemoteServerInfo source, long blockNumber){
+        return files(source).floor(blockNumber);
+    }
+
+    public Long higher(RemoteServerInfo source, long fileId){
+        return files(source).higher(fileId);
+    }
+
+    public Long last(RemoteServerInfo source){
+        ConcurrentSkipListSet<Long> files = files(source);
+        return files.isEmpty() ? null : files.last();
+    }
+
+    public boolean isEmpty(RemoteServerInfo source){
+        return files(source).isEmpty();
+    }
+
+    public void add(RemoteServerInfo source, long fileId){
+        files(source).add(fileId);
+    }
+
+    public void remove(RemoteServerInfo source, long fileId){
+        files(source).remove(fileId);
+    }
+
+    /**
+     * List the directory again, for changes made by other processes.
+     */
+    public void refresh(RemoteServerInfo source){
+        catalogs.put(source.getLocalFilePath(), load(source.getLocalFilePath()));
+        log.debug("Binlog catalog of {} refreshed", source.getLocalFilePath());
+    }
+
+    /**
+     * @return the file id if the file name is a binlog of this catalog, otherwise null
+     */
+    public Long parseFileId(String fileName){
+        String suffix = "." + binlogSuffix;
+        if(!fileName.endsWith(suffix)) return null;
+        String id = fileName.substring(0, fileName.length() - suffix.length());
+        if(id.isEmpty() || !id.chars().allMatch(Character::isDigit)) return null;
+        return Long.parseLong(id);
+    }
+
+    private ConcurrentSkipListSet<Long> files(RemoteServerInfo source){
+        return catalogs.computeIfAbsent(source.getLocalFilePath(), this::load);
+    }
+
+    private ConcurrentSkipListSet<Long> load(String path){
+        return new ConcurrentSkipListSet<>(BinlogFileUtils.getFileIds(path, binlogSuffix));
+    }
+}
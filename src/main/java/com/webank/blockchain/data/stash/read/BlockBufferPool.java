@@ -0,0 +1,108 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers for block frames received over the network, so the frame bytes stay off the java heap.
+ * Buffers are pooled in power of two size classes, up to maxPooledBytes idle bytes, a buffer released while the
+ * pool is full is left to the garbage collector.
+ */
+public class BlockBufferPool {
+
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 30;
+
+    private final long maxPooledBytes;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] classes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public BlockBufferPool(long maxPooledBytes){
+        this.maxPooledBytes = maxPooledBytes;
+        this.classes = new ConcurrentLinkedQueue[MAX_SHIFT - MIN_SHIFT + 1];
+        for(int i=0;i<classes.length;i++){
+            classes[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * @return a buffer of the given length, it goes back to the pool once released by every holder
+     */
+    public PooledBuffer acquire(int length){
+        int shift = shift(length);
+        ByteBuffer buffer = null;
+        if(shift <= MAX_SHIFT){
+            buffer = classes[shift - MIN_SHIFT].poll();
+        }
+        if(buffer != null){
+            hits.incrementAndGet();
+            pooledBytes.addAndGet(-buffer.capacity());
+        }
+        else{
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(shift <= MAX_SHIFT ? 1 << shift : length);
+            allocatedBytes.addAndGet(buffer.capacity());
+        }
+        inUseBytes.addAndGet(buffer.capacity());
+        buffer.clear().limit(length);
+        return new PooledBuffer(this, buffer);
+    }
+
+    void recycle(ByteBuffer buffer){
+        int capacity = buffer.capacity();
+        inUseBytes.addAndGet(-capacity);
+        int shift = shift(capacity);
+        //Oversized buffers are never pooled
+        if(shift <= MAX_SHIFT){
+            if(pooledBytes.addAndGet(capacity) <= maxPooledBytes){
+                classes[shift - MIN_SHIFT].offer(buffer);
+                return;
+            }
+            pooledBytes.addAndGet(-capacity);
+        }
+        allocatedBytes.addAndGet(-capacity);
+    }
+
+    private static int shift(int length){
+        if(length <= 1 << MIN_SHIFT) return MIN_SHIFT;
+        return 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+
+    /**
+     * Direct bytes held by frames not released yet
+     */
+    public long getInUseBytes(){
+        return inUseBytes.get();
+    }
+
+    /**
+     * Direct bytes idle in the pool
+     */
+    public long getPooledBytes(){
+        return pooledBytes.get();
+    }
+
+    /**
+     * Direct bytes allocated by the pool and not given back to the garbage collector
+     */
+    public long getAllocatedBytes(){
+        return allocatedBytes.get();
+    }
+
+    public double getHitRate(){
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("in use %d bytes, pooled %d/%d bytes, allocated %d bytes, hit rate %.2f",
+                getInUseBytes(), getPooledBytes(), maxPooledBytes, getAllocatedBytes(), getHitRate());
+    }
+}
@@ -0,0 +1,92 @@
+package com.webank.blockchain.data.stash.read;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.utils.BytesUtil;
+
+/**
+ * Cuts a binlog byte stream which arrives in arbitrary chunks into block frames. Each frame is the block content
+ * following the length prefix, crc32 included, exactly what {@link MultiSourceBlockReader} returns.
+ */
+public class BlockFrameAssembler {
+
+    private byte[] buffer;
+    private int start;
+    private int end;
+    private int skip;
+
+    /**
+     * @param skip bytes to drop before the first frame, the binlog version header when starting at file offset 0
+     */
+    public BlockFrameAssembler(int skip){
+        this.buffer = new byte[64 * 1024];
+        this.skip = skip;
+    }
+
+    public void append(byte[] data, int offset, int length){
+        if(skip > 0){
+            int skipped = Math.min(skip, length);
+            skip -= skipped;
+            offset += skipped;
+            length -= skipped;
+        }
+        if(length == 0) return;
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, end, length);
+        end += length;
+    }
+
+    /**
+     * @return next complete frame, or null if the bytes of the next frame have not all arrived yet
+     */
+    public byte[] nextFrame(){
+        if(end - start < BinlogConstants.BLOCK_LENGTH) return null;
+        int blockLength = BytesUtil.byte4FromSrcToInt(buffer, start);
+        if(end - start - BinlogConstants.BLOCK_LENGTH < blockLength) return null;
+        byte[] frame = BytesUtil.subBytes(buffer, start + BinlogConstants.BLOCK_LENGTH, blockLength);
+        start += BinlogConstants.BLOCK_LENGTH + blockLength;
+        if(start == end){
+            start = 0;
+            end = 0;
+        }
+        return frame;
+    }
+
+    /**
+     * Same as {@link #nextFrame()}, the frame is copied into a buffer of the pool instead of a new byte array.
+     */
+    public PooledBuffer nextFrame(BlockBufferPool pool){
+        if(end - start < BinlogConstants.BLOCK_LENGTH) return null;
+        int blockLength = BytesUtil.byte4FromSrcToInt(buffer, start);
+        if(end - start - BinlogConstants.BLOCK_LENGTH < blockLength) return null;
+        PooledBuffer frame = pool.acquire(blockLength);
+        frame.buffer().put(buffer, start + BinlogConstants.BLOCK_LENGTH, blockLength);
+        start += BinlogConstants.BLOCK_LENGTH + blockLength;
+        if(start == end){
+            start = 0;
+            end = 0;
+        }
+        return frame;
+    }
+
+    /**
+     * Bytes received but not yet returned as a frame.
+     */
+    public int pending(){
+        return end - start;
+    }
+
+    private void ensureCapacity(int length){
+        if(buffer.length - end >= length) return;
+        int pending = end - start;
+        if(buffer.length - pending >= length){
+            System.arraycopy(buffer, start, buffer, 0, pending);
+        }
+        else{
+            byte[] bigger = new byte[Math.max(buffer.length * 2, pending + length)];
+            System.arraycopy(buffer, start, bigger, 0, pending);
+            buffer = bigger;
+        }
+        start = 0;
+        end = pending;
+    }
+}
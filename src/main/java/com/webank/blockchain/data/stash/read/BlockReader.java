@@ -0,0 +1,18 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads the same block from every source.
+ */
+public interface BlockReader extends Closeable {
+
+    /**
+     * @return the next block of every source in source order, each the block content following the length prefix,
+     *         crc32 included; or null if some source has no more block yet
+     */
+    List<ByteBuffer> read() throws IOException;
+}
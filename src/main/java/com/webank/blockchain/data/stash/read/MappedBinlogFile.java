@@ -0,0 +1,109 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+
+/**
+ * Memory mapped cursor over one binlog file. Block frames are returned as read only slices of the mapping, so no
+ * bytes are copied. The binlog may still be appended by the downloader, the file is mapped again once the cursor
+ * reaches the end of the current mapping and the file has grown.
+ *
+ * The slices stay valid after the cursor is closed, the mapping is released when no slice refers to it anymore.
+ */
+public class MappedBinlogFile implements Closeable {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private ByteBuffer mapped;
+    //File offset of the first mapped byte
+    private long base;
+    private int position;
+    private boolean partialBlock;
+
+    public MappedBinlogFile(File file) throws IOException{
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        map(0);
+    }
+
+    /**
+     * @return current file offset
+     */
+    public long position(){
+        return base + position;
+    }
+
+    public void seek(long offset) throws IOException{
+        if(offset < base || offset > base + mapped.limit()){
+            map(offset);
+        }
+        else{
+            position = (int) (offset - base);
+        }
+    }
+
+    /**
+     * Read next block frame, the block content following the length prefix, crc32 included. A partially written
+     * frame is not consumed, it's returned once the rest of the bytes arrive.
+     *
+     * @return the frame, or null at the end of the file
+     */
+    public ByteBuffer nextFrame() throws IOException{
+        partialBlock = false;
+        long remaining = remaining(BinlogConstants.BLOCK_LENGTH);
+        if(remaining == 0) return null;
+        if(remaining < BinlogConstants.BLOCK_LENGTH){
+            partialBlock = true;
+            return null;
+        }
+        int blockLength = mapped.getInt(position);
+        if(remaining(BinlogConstants.BLOCK_LENGTH + blockLength) < BinlogConstants.BLOCK_LENGTH + blockLength){
+            partialBlock = true;
+            return null;
+        }
+        ByteBuffer frame = slice(position + BinlogConstants.BLOCK_LENGTH, blockLength);
+        position += BinlogConstants.BLOCK_LENGTH + blockLength;
+        return frame;
+    }
+
+    /**
+     * @return true if the last {@link #nextFrame()} stopped at a partially written frame
+     */
+    public boolean isPartialBlock(){
+        return partialBlock;
+    }
+
+    private ByteBuffer slice(int offset, int length){
+        ByteBuffer dup = mapped.duplicate();
+        dup.limit(offset + length).position(offset);
+        return dup.slice().asReadOnlyBuffer();
+    }
+
+    private long remaining(int needed) throws IOException{
+        if(mapped.limit() - position < needed && channel.size() > base + mapped.limit()){
+            map(base + position);
+        }
+        return mapped.limit() - position;
+    }
+
+    private void map(long offset) throws IOException{
+        long size = channel.size() - offset;
+        //A single mapping can not exceed 2G, larger files are mapped in windows. Nothing to map before the file
+        //grows past the offset, a read only channel can not extend it
+        mapped = size <= 0 ? EMPTY
+                : channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size, Integer.MAX_VALUE));
+        base = offset;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
@@ -1,49 +1,51 @@
 package com.webank.blockchain.data.stash.read;
 
-import cn.hutool.core.convert.Convert;
-import cn.hutool.core.io.FileUtil;
-import com.webank.blockchain.data.stash.constants.BinlogConstants;
 import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
 import com.webank.blockchain.data.stash.fetch.BinlogLocationBO;
-import com.webank.blockchain.data.stash.utils.BinlogFileUtils;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.*;
 
 @Slf4j
-public class MultiSourceBlockReader implements Closeable {
+public class MultiSourceBlockReader implements BlockReader {
 
     private String binlogSuffix;
     private List<RemoteServerInfo> sources;
-    private Map<RemoteServerInfo, TreeSet<Long>> binlogFiles;
+    private BinlogFileCatalog catalog;
     private Map<RemoteServerInfo, Long> currentBinlogFiles;
-    private Map<RemoteServerInfo, InputStream> inputStreams;
+    private Map<RemoteServerInfo, MappedBinlogFile> binlogs;
+    private Map<RemoteServerInfo, BinlogBlockIndex> indexes;
 
-    private byte[] lengthBytes = new byte[BinlogConstants.BLOCK_LENGTH];
-
-    public MultiSourceBlockReader(List<RemoteServerInfo> sources, long initBlockNumber, String binlogSuffix) throws IOException{
+    public MultiSourceBlockReader(List<RemoteServerInfo> sources, long initBlockNumber, BinlogFileCatalog catalog, String binlogSuffix) throws IOException{
         this.sources = sources;
+        this.catalog = catalog;
         this.binlogSuffix = binlogSuffix;
         init(initBlockNumber);
     }
 
+    public MultiSourceBlockReader(List<RemoteServerInfo> sources, long initBlockNumber, String binlogSuffix) throws IOException{
+        this(sources, initBlockNumber, new BinlogFileCatalog(binlogSuffix), binlogSuffix);
+    }
+
     public MultiSourceBlockReader(List<RemoteServerInfo> sources, long initBlockNumber) throws IOException{
         this(sources, initBlockNumber, "binlog");
     }
 
-    public List<byte[]> read() throws IOException{
+    /**
+     * Read the next block of every source. Each block is a read only slice over the memory mapped binlog, the
+     * block content following the length prefix, crc32 included.
+     */
+    @Override
+    public List<ByteBuffer> read() throws IOException{
         /**
          * 1. Locate each local file
          */
-        List<byte[]> result = new ArrayList<>(this.sources.size());
+        List<ByteBuffer> result = new ArrayList<>(this.sources.size());
         for(RemoteServerInfo source:this.sources){
-            InputStream in = this.inputStreams.get(source);
-            byte[] blockData = readBlock(in);
+            ByteBuffer blockData = nextFrame(source);
             //Current file EOF.
             if(blockData == null){
                 //This block is not generated yet, wait.
@@ -51,12 +53,21 @@ public class MultiSourceBlockReader implements Closeable {
                     log.info("No more file to read");
                     return null;
                 }
+                //The binlog is already complete, so a partial block can not be appended later
+                if(this.binlogs.get(source).isPartialBlock()){
+                    throw new IOException("binlog truncated: " + currentBinlogFiles.get(source) + "." + binlogSuffix);
+                }
                 //Scroll to next binlog
                 else{
                     log.info("Scroll to next binlog");
-                    in = scrollToNextFile(source);
+                    scrollToNextFile(source);
                     log.info("Next binlog is {}.{}",currentBinlogFiles.get(source),binlogSuffix);
-                    blockData = readBlock(in);
+                    blockData = nextFrame(source);
+                    //The next binlog has no complete block yet, it's read again from this block later
+                    if(blockData == null){
+                        log.info("No complete block in {}.{} yet",currentBinlogFiles.get(source),binlogSuffix);
+                        return null;
+                    }
                 }
             }
             result.add(blockData);
@@ -64,54 +75,66 @@ public class MultiSourceBlockReader implements Closeable {
         return result;
     }
 
+    /**
+     * Read the next frame of the source and record its offset in the index.
+     */
+    private ByteBuffer nextFrame(RemoteServerInfo source) throws IOException{
+        MappedBinlogFile binlog = this.binlogs.get(source);
+        long offset = binlog.position();
+        ByteBuffer frame = binlog.nextFrame();
+        BinlogBlockIndex index = this.indexes.get(source);
+        if(frame != null && index != null){
+            index.append(frame.getLong(0), offset);
+        }
+        return frame;
+    }
+
     private boolean noreMoreFileToRead(RemoteServerInfo source) {
         Long currentBinlog = this.currentBinlogFiles.get(source);
-        TreeSet<Long> filesSet = BinlogFileUtils.getFileIds(source.getLocalFilePath(), binlogSuffix);
-        return filesSet.higher(currentBinlog) == null;
+        return catalog.higher(source, currentBinlog) == null;
     }
 
 
-    private InputStream scrollToNextFile(RemoteServerInfo source) throws IOException {
+    private MappedBinlogFile scrollToNextFile(RemoteServerInfo source) throws IOException {
         //Closing old
-        InputStream oldStream = this.inputStreams.get(source);
-        if(oldStream != null) {
+        MappedBinlogFile old = this.binlogs.get(source);
+        if(old != null) {
             try{
-                oldStream.close();
+                old.close();
             }catch (Exception ex){}
         }
-        //Prepare new stream
+        closeIndex(source);
+        //Prepare new binlog
         long current = this.currentBinlogFiles.get(source);
-        long next = this.binlogFiles.get(source).higher(current);
-        InputStream newStream = prepareStreamByBlockNumber(next, source);
-        return newStream;
+        long next = catalog.higher(source, current);
+        return prepareBinlogByBlockNumber(next, source);
     }
 
     private void init(long initBlockNumber) throws IOException{
-        this.binlogFiles = new HashMap<>(sources.size());
-        this.inputStreams = new HashMap<>(sources.size());
+        this.binlogs = new HashMap<>(sources.size());
+        this.indexes = new HashMap<>(sources.size());
         this.currentBinlogFiles = new HashMap<>(sources.size());
 
         for(RemoteServerInfo source:this.sources){
-            binlogFiles.put(source, BinlogFileUtils.getFileIds(source.getLocalFilePath(), binlogSuffix));
-            prepareStreamByBlockNumber(initBlockNumber, source);
+            prepareBinlogByBlockNumber(initBlockNumber, source);
         }
     }
 
-    private InputStream prepareStreamByBlockNumber(long blockNumber, RemoteServerInfo source) throws IOException{
+    private MappedBinlogFile prepareBinlogByBlockNumber(long blockNumber, RemoteServerInfo source) throws IOException{
         //1. Location file
-        TreeSet<Long> filesSet = BinlogFileUtils.getFileIds(source.getLocalFilePath(), binlogSuffix);
-        Long floor = filesSet.floor(blockNumber);
+        Long floor = catalog.floor(source, blockNumber);
         if(floor == null) {
             throw new IOException("No binlog found for block "+blockNumber);
         }
         BinlogLocationBO location = this.locate(source, floor);
         //2. Location position
-        InputStream newStream = FileUtil.getInputStream(new File((location.getFilePath())));
-        seekToPosition(floor, newStream, blockNumber);
-        //3. Update current status
-        this.inputStreams.put(source, newStream);
+        File file = new File(location.getFilePath());
+        MappedBinlogFile binlog = new MappedBinlogFile(file);
+        this.binlogs.put(source, binlog);
         this.currentBinlogFiles.put(source, floor);
-        return newStream;
+        openIndex(source, file, floor);
+        seekToPosition(floor, source, file, blockNumber);
+        return binlog;
     }
 
 
@@ -121,52 +144,99 @@ public class MultiSourceBlockReader implements Closeable {
         return bo;
     }
 
-    private void seekToPosition(long binlogStartBlock, InputStream in, long blockNumber) throws IOException{
+    private void seekToPosition(long binlogStartBlock, RemoteServerInfo source, File file, long blockNumber) throws IOException{
         if(blockNumber < binlogStartBlock){
             throw new IOException("Invalid block number "+blockNumber + " versus binlog file "+binlogStartBlock);
         }
-        in.skip(4);
+        MappedBinlogFile binlog = this.binlogs.get(source);
+        binlog.seek(4);
         //First block
         if(blockNumber == binlogStartBlock){
             log.debug("first block in binlog");
             return;
         }
+        if(seekByIndex(source, file, binlogStartBlock, blockNumber)){
+            return;
+        }
         //Otherwise
         long target = blockNumber - 1;
         while(true){
-            byte[] blockData = readBlock(in);
+            ByteBuffer blockData = nextFrame(source);
             if(blockData == null) {
                 log.warn("block number {} not found in {}.binlog",blockNumber,binlogStartBlock);
                 break;
             }
-            long num = ByteBuffer.wrap(blockData).getLong();
+            long num = blockData.getLong(0);
             if(num == target){
                 return;
             }
         }
     }
 
-    private byte[] readBlock(InputStream in) throws IOException{
-        int nread = in.read(this.lengthBytes);
-        if(nread == -1) return null;
-        if(nread != BinlogConstants.BLOCK_LENGTH) throw new IOException("binlog length bytes read only "+nread +" bytes");
+    /**
+     * Seek to the block with the index. If the block is beyond the index, seek to the last indexed block and let
+     * the scan continue from there. A stale index is dropped and rebuilt in background.
+     *
+     * @return true if the block is found
+     */
+    private boolean seekByIndex(RemoteServerInfo source, File file, long binlogStartBlock, long blockNumber) throws IOException{
+        BinlogBlockIndex index = this.indexes.get(source);
+        if(index == null || index.lastBlock() < 0){
+            return false;
+        }
+        MappedBinlogFile binlog = this.binlogs.get(source);
+        long offset = index.offset(blockNumber);
+        if(offset >= 0 && isBlockAt(binlog, offset, blockNumber)){
+            binlog.seek(offset);
+            return true;
+        }
+        if(offset < 0 && isBlockAt(binlog, index.lastOffset(), index.lastBlock())){
+            binlog.seek(index.lastOffset());
+            return false;
+        }
+        log.warn("Index of {}.{} is stale, rebuild it", binlogStartBlock, binlogSuffix);
+        closeIndex(source);
+        BinlogBlockIndex.rebuildAsync(file, binlogStartBlock);
+        binlog.seek(4);
+        return false;
+    }
 
-        int blockLength = Convert.bytesToInt(this.lengthBytes);
-        byte[] content = new byte[blockLength];
-        nread = in.read(content);
-        if(nread != blockLength) throw new IOException("binlog truncated");
-        return content;
+    private boolean isBlockAt(MappedBinlogFile binlog, long offset, long blockNumber) throws IOException{
+        binlog.seek(offset);
+        ByteBuffer frame = binlog.nextFrame();
+        return frame != null && frame.remaining() >= 8 && frame.getLong(0) == blockNumber;
+    }
+
+    private void openIndex(RemoteServerInfo source, File file, long floor){
+        try{
+            this.indexes.put(source, new BinlogBlockIndex(file, floor));
+        }
+        catch (IOException ex){
+            log.warn("Index of {}.{} is not available: {}", floor, binlogSuffix, ex.getMessage());
+        }
+    }
+
+    private void closeIndex(RemoteServerInfo source){
+        BinlogBlockIndex index = this.indexes.remove(source);
+        if(index != null){
+            try{
+                index.close();
+            }catch (Exception ex){}
+        }
     }
 
     @Override
     public void close() throws IOException {
-        for(InputStream in:this.inputStreams.values()){
-            if(in != null){
+        for(MappedBinlogFile binlog:this.binlogs.values()){
+            if(binlog != null){
                 try{
-                    in.close();
+                    binlog.close();
                 }
                 catch (Exception ex){}
             }
         }
+        for(RemoteServerInfo source:this.sources){
+            closeIndex(source);
+        }
     }
 }
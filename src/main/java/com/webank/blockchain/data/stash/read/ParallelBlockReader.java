@@ -0,0 +1,171 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+
+/**
+ * Reads every source on its own read-ahead thread into a bounded queue, so the sources are read and rolled over
+ * to their next binlog concurrently. The merge aligns the frames by block number and returns a block only when all
+ * sources have delivered it.
+ */
+public class ParallelBlockReader implements BlockReader {
+
+    private static final Frame END = new Frame(null, null);
+
+    private List<RemoteServerInfo> sources;
+    private List<BlockingQueue<Frame>> queues;
+    private CountDownLatch finished;
+    private volatile boolean closed;
+    private long next;
+    private boolean end;
+
+    /**
+     * @param readAhead frames each source may read ahead of the merge
+     */
+    public ParallelBlockReader(List<RemoteServerInfo> sources, long initBlockNumber, BinlogFileCatalog catalog,
+            String binlogSuffix, int readAhead, ExecutorService executor) throws IOException{
+        this.sources = sources;
+        this.next = initBlockNumber;
+        //Open on the caller thread, so a missing binlog fails here as with the sequential reader
+        List<MultiSourceBlockReader> readers = new ArrayList<>(sources.size());
+        try{
+            for(RemoteServerInfo source:sources){
+                readers.add(new MultiSourceBlockReader(Collections.singletonList(source), initBlockNumber, catalog,
+                        binlogSuffix));
+            }
+        }
+        catch (IOException ex){
+            for(MultiSourceBlockReader reader:readers){
+                reader.close();
+            }
+            throw ex;
+        }
+        this.queues = new ArrayList<>(sources.size());
+        this.finished = new CountDownLatch(sources.size());
+        for(MultiSourceBlockReader reader:readers){
+            BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(Math.max(1, readAhead));
+            queues.add(queue);
+            executor.execute(() -> readAhead(reader, queue));
+        }
+    }
+
+    private void readAhead(MultiSourceBlockReader reader, BlockingQueue<Frame> queue){
+        try{
+            List<ByteBuffer> blocks;
+            while(!closed && (blocks = reader.read()) != null){
+                queue.put(new Frame(blocks.get(0), null));
+            }
+            if(!closed){
+                queue.put(END);
+            }
+        }
+        catch (IOException ex){
+            put(queue, new Frame(null, ex));
+        }
+        catch (RuntimeException ex){
+            //Never leave the merge waiting for a dead thread
+            put(queue, new Frame(null, new IOException(ex)));
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            try{
+                reader.close();
+            }catch (Exception ex){}
+            finished.countDown();
+        }
+    }
+
+    private void put(BlockingQueue<Frame> queue, Frame frame){
+        try{
+            if(!closed){
+                queue.put(frame);
+            }
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public List<ByteBuffer> read() throws IOException{
+        if(end) return null;
+        List<ByteBuffer> result = new ArrayList<>(sources.size());
+        for(int i=0;i<sources.size();i++){
+            ByteBuffer frame = take(i);
+            if(frame == null){
+                end = true;
+                return null;
+            }
+            result.add(frame);
+        }
+        next++;
+        return result;
+    }
+
+    /**
+     * Take the frame of the next block from the source.
+     */
+    private ByteBuffer take(int i) throws IOException{
+        while(true){
+            Frame frame;
+            try{
+                frame = queues.get(i).take();
+            }
+            catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading " + sources.get(i).getUrl());
+            }
+            if(frame == END){
+                return null;
+            }
+            if(frame.error != null){
+                throw frame.error;
+            }
+            long blockNumber = frame.data.getLong(0);
+            if(blockNumber < next){
+                continue;
+            }
+            if(blockNumber > next){
+                throw new IOException("Block " + next + " is missing in " + sources.get(i).getUrl());
+            }
+            return frame.data;
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        closed = true;
+        //Make room for a blocked read-ahead thread, it sees the flag after its put
+        for(BlockingQueue<Frame> queue:queues){
+            queue.clear();
+        }
+        try{
+            //The read-ahead threads close their binlogs on exit
+            finished.await();
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Frame {
+        private ByteBuffer data;
+        private IOException error;
+
+        private Frame(ByteBuffer data, IOException error){
+            this.data = data;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted buffer of a {@link BlockBufferPool}. It starts with one reference, every holder which keeps
+ * the bytes beyond the owner's use retains it and releases it when done. The buffer goes back to the pool when the
+ * last reference is released, views of it must not be used afterwards.
+ */
+public class PooledBuffer {
+
+    private final BlockBufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    PooledBuffer(BlockBufferPool pool, ByteBuffer buffer){
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return a view of the bytes, position 0 and limit the length acquired
+     */
+    public ByteBuffer buffer(){
+        return buffer.duplicate();
+    }
+
+    public PooledBuffer retain(){
+        if(refCount.getAndIncrement() <= 0){
+            refCount.getAndDecrement();
+            throw new IllegalStateException("buffer already released");
+        }
+        return this;
+    }
+
+    /**
+     * @return true if this was the last reference and the buffer went back to the pool
+     */
+    public boolean release(){
+        int count = refCount.decrementAndGet();
+        if(count < 0){
+            refCount.incrementAndGet();
+            throw new IllegalStateException("buffer already released");
+        }
+        if(count == 0){
+            pool.recycle(buffer);
+            return true;
+        }
+        return false;
+    }
+
+    public int refCount(){
+        return refCount.get();
+    }
+}
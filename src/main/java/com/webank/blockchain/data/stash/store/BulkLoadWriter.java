@@ -0,0 +1,386 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.DataStorageTypeConstants;
+import com.webank.blockchain.data.stash.entity.ColumnInfo;
+import com.webank.blockchain.data.stash.entity.EntryInfo;
+import com.webank.blockchain.data.stash.exception.DataStashException;
+import com.webank.blockchain.data.stash.utils.CommonUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BulkLoadWriter
+ *
+ * @Description: Writes entries of dynamic tables in catch-up mode. The entries are appended as tab separated rows to
+ *               an in-memory buffer per (detail table, columns), and every buffer is sent with one LOAD DATA LOCAL
+ *               INFILE statement on flush. Only the detail tables are written, the current tables are rebuilt from
+ *               them with {@link #rebuild(String)} once catch-up ends.
+ *
+ *               The loads run on a connection of their own, the only one allowed to send local data. It's opened
+ *               with allowLoadLocalInfileInPath on an empty directory, so the server can get the streamed rows but
+ *               no file of the host. The datasource url needs no allowLoadLocalInfile.
+ *
+ */
+@Service
+@Slf4j
+public class BulkLoadWriter {
+
+    private static final String[] DEFAULT_FIELDS = { "_id_", "_hash_", "_status_", "_num_" };
+    private static final String LOAD_DIR = "bulkload";
+    private static final int ER_NOT_ALLOWED_COMMAND = 1148;
+    private static final int ER_CLIENT_LOCAL_FILES_DISABLED = 3948;
+    static final String CLIENT = "client";
+    static final String SERVER = "server";
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+    @Autowired
+    private SystemPropertyConfig config;
+
+    private volatile boolean active;
+    private Boolean available;
+    private String refusedBy;
+    private Map<String, RowBuffer> buffers = new LinkedHashMap<>();
+    private long bufferedBytes;
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * Check once that local data can be loaded. The server must have local_infile on, then an empty stream is
+     * loaded into a temporary table on a load connection, which fails if the connector refuses to send local data.
+     */
+    public synchronized boolean isAvailable() {
+        if (available == null) {
+            refusedBy = probe();
+            available = refusedBy == null;
+        }
+        return available;
+    }
+
+    /**
+     * @return "client" or "server", the side refusing local data, null if it can be loaded or isn't checked yet
+     */
+    public synchronized String getRefusedBy() {
+        return refusedBy;
+    }
+
+    private String probe() {
+        try (Connection connection = openLoadConnection(); Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("select @@local_infile")) {
+                if (!rs.next() || !rs.getBoolean(1)) {
+                    log.error("LOAD DATA LOCAL INFILE is refused by the server, dynamic tables are written "
+                            + "incrementally. The MySQL server needs local_infile=ON for system.bulkCatchUp");
+                    return SERVER;
+                }
+            }
+            statement.execute("create temporary table `_bulk_load_probe_` (`a` int)");
+            statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(new byte[0]));
+            statement.executeUpdate("load data local infile 'stream' into table `_bulk_load_probe_`");
+            return null;
+        } catch (SQLException e) {
+            String side = refusingSide(e);
+            if (CLIENT.equals(side)) {
+                log.error("LOAD DATA LOCAL INFILE is refused by the client, dynamic tables are written incrementally. "
+                        + "allowLoadLocalInfileInPath needs mysql-connector-java 8.0.22 or later: {}", e.getMessage());
+            } else {
+                log.error("LOAD DATA LOCAL INFILE is refused by the server, dynamic tables are written "
+                        + "incrementally: {}", e.getMessage());
+            }
+            return side;
+        }
+    }
+
+    /**
+     * The server has local_infile on when the load is sent, so a refusal of the server means the connector didn't
+     * offer local data, and the connector names its own setting when it refuses.
+     */
+    static String refusingSide(SQLException e) {
+        if (e.getErrorCode() == ER_NOT_ALLOWED_COMMAND || e.getErrorCode() == ER_CLIENT_LOCAL_FILES_DISABLED
+                || StringUtils.contains(e.getMessage(), "allowLoadLocalInfile")) {
+            return CLIENT;
+        }
+        return SERVER;
+    }
+
+    /**
+     * Append the entries to the buffers of the detail table of the table.
+     */
+    public void append(String tableName, Collection<EntryInfo> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        String detailTableName = CommonUtil.getDetailTableName(tableName);
+        //Encode outside the lock, the store threads only contend for adding the rows
+        List<String> keys = new ArrayList<>(entries.size());
+        List<List<String>> shapes = new ArrayList<>(entries.size());
+        List<byte[]> rows = new ArrayList<>(entries.size());
+        for (EntryInfo entry : entries) {
+            List<String> columns = new ArrayList<>(entry.getColumns().size());
+            for (ColumnInfo column : entry.getColumns()) {
+                columns.add(column.getColumnName());
+            }
+            keys.add(detailTableName + ":" + String.join(",", columns));
+            shapes.add(columns);
+            rows.add(encode(entry));
+        }
+        synchronized (this) {
+            for (int i = 0; i < rows.size(); i++) {
+                RowBuffer buffer = buffers.get(keys.get(i));
+                if (buffer == null) {
+                    buffer = new RowBuffer(detailTableName, shapes.get(i));
+                    buffers.put(keys.get(i), buffer);
+                }
+                buffer.write(rows.get(i), 0, rows.get(i).length);
+                buffer.rows++;
+                bufferedBytes += rows.get(i).length;
+            }
+        }
+    }
+
+    /**
+     * @return true if the buffered rows reach system.bulkLoadBytes
+     */
+    public synchronized boolean isFull() {
+        return bufferedBytes >= config.getBulkLoadBytes();
+    }
+
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * Load the buffered rows into the detail tables. The rows appended before the call are loaded, the rows
+     * appended meanwhile go to new buffers.
+     *
+     * @return rows loaded
+     */
+    public long flush() throws DataStashException {
+        Map<String, RowBuffer> full;
+        synchronized (this) {
+            if (buffers.isEmpty()) {
+                return 0;
+            }
+            full = buffers;
+            buffers = new LinkedHashMap<>();
+            bufferedBytes = 0;
+        }
+        long start = System.currentTimeMillis();
+        long rows = 0;
+        long bytes = 0;
+        try (Connection connection = openLoadConnection()) {
+            for (RowBuffer buffer : full.values()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(buffer.toInputStream());
+                    statement.executeUpdate(loadStatement(buffer.table, buffer.columns));
+                }
+                rows += buffer.rows;
+                bytes += buffer.size();
+            }
+        } catch (SQLException e) {
+            log.error("Bulk load of {} rows failed", rows);
+            throw new DataStashException(e);
+        }
+        log.info("Bulk loaded {} rows, {} bytes into {} tables in {} ms", rows, bytes, full.size(),
+                System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    /**
+     * Rebuild the current table from its detail table, the row of every _id_ is the one of its last block.
+     */
+    public void rebuild(String tableName) throws DataStashException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            List<String> fields = new ArrayList<>();
+            try (PreparedStatement ps = connection.prepareStatement("select column_name from "
+                    + "information_schema.columns where table_schema = database() and table_name = ? "
+                    + "order by ordinal_position")) {
+                ps.setString(1, tableName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        fields.add(rs.getString(1));
+                    }
+                }
+            }
+            if (fields.isEmpty()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            try (Statement statement = connection.createStatement()) {
+                int rows = statement.executeUpdate(rebuildStatement(tableName, fields));
+                log.info("Current table {} rebuilt, {} rows in {} ms", tableName, rows,
+                        System.currentTimeMillis() - start);
+            }
+        } catch (SQLException e) {
+            log.error("Rebuild current table {} failed", tableName);
+            throw new DataStashException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    Connection openLoadConnection() throws SQLException {
+        File loadDir = new File(config.getLocalBinlogPath(), LOAD_DIR);
+        if (!loadDir.isDirectory() && !loadDir.mkdirs()) {
+            throw new SQLException("Can not create " + loadDir);
+        }
+        return DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                loadProperties(dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword(),
+                        loadDir.getAbsolutePath()));
+    }
+
+    static Properties loadProperties(String user, String password, String loadDir) {
+        Properties properties = new Properties();
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        //Local data is sent only from the stream set on the statement, or from the empty directory
+        properties.setProperty("allowLoadLocalInfile", "false");
+        properties.setProperty("allowLoadLocalInfileInPath", loadDir);
+        return properties;
+    }
+
+    static String loadStatement(String detailTableName, List<String> columns) {
+        //Default field and line format: tab separated, escaped by backslash, one row per line
+        StringBuilder sql = new StringBuilder("load data local infile 'stream' into table `");
+        sql.append(detailTableName).append("` character set utf8 (");
+        for (String field : DEFAULT_FIELDS) {
+            sql.append("`").append(field).append("`,");
+        }
+        for (String column : columns) {
+            sql.append("`").append(column).append("`,");
+        }
+        sql.setCharAt(sql.length() - 1, ')');
+        return sql.toString();
+    }
+
+    static String rebuildStatement(String tableName, List<String> fields) {
+        StringBuilder columns = new StringBuilder();
+        for (String field : fields) {
+            if (columns.length() > 0) {
+                columns.append(",");
+            }
+            columns.append("d.`").append(field).append("`");
+        }
+        String detailTableName = "`" + CommonUtil.getDetailTableName(tableName) + "`";
+        //The last row of the last block of every _id_
+        return "replace into `" + tableName + "` (" + columns.toString().replace("d.`", "`") + ") select " + columns
+                + " from " + detailTableName + " d join (select max(t.pk_id) pk_id from " + detailTableName
+                + " t join (select _id_, max(_num_) _num_ from " + detailTableName
+                + " group by _id_) m on t._id_ = m._id_ and t._num_ = m._num_ group by t._id_) top"
+                + " on d.pk_id = top.pk_id";
+    }
+
+    static byte[] encode(EntryInfo entry) {
+        StringBuilder row = new StringBuilder();
+        row.append(entry.getId()).append('\t');
+        escape(row, entry.getHash() == null ? DataStorageTypeConstants.DEFALT_HASH : entry.getHash());
+        row.append('\t').append(entry.getStatus()).append('\t').append(entry.getNum());
+        for (ColumnInfo column : entry.getColumns()) {
+            row.append('\t');
+            escape(row, column.getColumnValue());
+        }
+        row.append('\n');
+        return row.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void escape(StringBuilder row, String value) {
+        if (value == null) {
+            row.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    row.append("\\\\");
+                    break;
+                case '\t':
+                    row.append("\\t");
+                    break;
+                case '\n':
+                    row.append("\\n");
+                    break;
+                case '\r':
+                    row.append("\\r");
+                    break;
+                case '\0':
+                    row.append("\\0");
+                    break;
+                default:
+                    row.append(c);
+            }
+        }
+    }
+
+    private static class RowBuffer extends ByteArrayOutputStream {
+        private final String table;
+        private final List<String> columns;
+        private long rows;
+
+        private RowBuffer(String table, List<String> columns) {
+            super(64 * 1024);
+            this.table = table;
+            this.columns = columns;
+        }
+
+        /**
+         * A stream over the buffered bytes, without copying them.
+         */
+        private InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.webank.blockchain.data.stash.constants.DBDynamicTableConstants;
 import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
 import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
 import com.webank.blockchain.data.stash.entity.TableDataInfo;
+import com.webank.blockchain.data.stash.manager.RecoverSnapshotService;
 import com.webank.blockchain.data.stash.exception.DataStashException;
 
 import lombok.extern.slf4j.Slf4j;
@@ -48,6 +49,9 @@ public class DBDataStorage implements DataStorage {
     @Autowired
     private Map<String, StorageService> storageServices;
 
+    @Autowired
+    private RecoverSnapshotService recoverSnapshotService;
+
     @PostConstruct
     @Transactional
     public void initSchema() throws SQLException {
@@ -66,6 +70,7 @@ public class DBDataStorage implements DataStorage {
             String serviceName = StringStyleUtils.underline2upper(DBStaticTableConstants.SYS_TABLES_TABLE)
                     + DBDynamicTableConstants.DB_SERVICE_POST_FIX;
             storageServices.get(serviceName).storeTableData(DBStaticTableConstants.SYS_TABLES_TABLE, sysTableData);
+            recoverSnapshotService.markDirty(DBStaticTableConstants.SYS_TABLES_TABLE);
             blockInfo.getTables().remove(DBStaticTableConstants.SYS_TABLES_TABLE);
         }
         blockInfo.getTables().entrySet().forEach(e -> storeData(e.getKey(), e.getValue()));
@@ -75,6 +80,7 @@ public class DBDataStorage implements DataStorage {
     @UseTime
     public void storeData(String tableName, TableDataInfo tableDataInfo) throws DataStashException {
         log.info("storage table name : {}", tableName);
+        recoverSnapshotService.markDirty(tableName);
         String serviceName = StringStyleUtils.underline2upper(tableName) + DBDynamicTableConstants.DB_SERVICE_POST_FIX;
         if (storageServices.containsKey(serviceName)) {
             storageServices.get(serviceName).storeTableData(tableName, tableDataInfo);
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.DataStorageTypeConstants;
+import com.webank.blockchain.data.stash.entity.ColumnInfo;
+import com.webank.blockchain.data.stash.entity.EntryInfo;
+import com.webank.blockchain.data.stash.exception.DataStashException;
+import com.webank.blockchain.data.stash.utils.CommonUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JdbcBatchWriter
+ *
+ * @Description: Writes entries of dynamic tables with parameterized statements. The sql of every (table, columns)
+ *               shape is built once and cached, the rows are bound and sent with addBatch/executeBatch, which the
+ *               driver rewrites to multi-row statements when rewriteBatchedStatements=true is set on the datasource
+ *               url. The connection of the current transaction is used, so the writes join the transaction of the
+ *               caller.
+ *
+ */
+@Service
+@Slf4j
+public class JdbcBatchWriter {
+
+    public enum WriteMode {
+        /**
+         * Current table, the row of the same _id_ is replaced
+         */
+        REPLACE,
+        /**
+         * Detail table, every row is appended
+         */
+        INSERT
+    }
+
+    private static final String[] DEFAULT_FIELDS = { "_id_", "_hash_", "_status_", "_num_" };
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private SystemPropertyConfig config;
+
+    private Map<String, String> statements = new ConcurrentHashMap<>();
+
+    /**
+     * Write the entries to the detail table, then to the current table.
+     */
+    public void write(String tableName, Collection<EntryInfo> entries) throws DataStashException {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        write(CommonUtil.getDetailTableName(tableName), WriteMode.INSERT, entries);
+        write(tableName, WriteMode.REPLACE, entries);
+    }
+
+    public void write(String tableName, WriteMode mode, Collection<EntryInfo> entries) throws DataStashException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            //Entries may set a different number of columns, each run of one column set is a batch of its own, so
+            //the rows keep their order
+            List<String> shape = null;
+            List<EntryInfo> run = new ArrayList<>();
+            for (EntryInfo entry : entries) {
+                List<String> columns = new ArrayList<>(entry.getColumns().size());
+                for (ColumnInfo column : entry.getColumns()) {
+                    columns.add(column.getColumnName());
+                }
+                if (!columns.equals(shape) && !run.isEmpty()) {
+                    executeBatch(connection, statement(tableName, mode, shape), run);
+                    run.clear();
+                }
+                shape = columns;
+                run.add(entry);
+            }
+            if (!run.isEmpty()) {
+                executeBatch(connection, statement(tableName, mode, shape), run);
+            }
+        } catch (SQLException e) {
+            log.error("Write {} entries of {} failed", entries.size(), tableName);
+            throw new DataStashException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private void executeBatch(Connection connection, String sql, List<EntryInfo> entries) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int rows = 0;
+            for (EntryInfo entry : entries) {
+                ps.setLong(1, entry.getId());
+                ps.setString(2, entry.getHash() == null ? DataStorageTypeConstants.DEFALT_HASH : entry.getHash());
+                ps.setInt(3, entry.getStatus());
+                ps.setLong(4, entry.getNum());
+                int index = DEFAULT_FIELDS.length + 1;
+                for (ColumnInfo column : entry.getColumns()) {
+                    column.bind(ps, index++);
+                }
+                ps.addBatch();
+                if (++rows % config.getJdbcBatchSize() == 0) {
+                    ps.executeBatch();
+                }
+            }
+            if (rows % config.getJdbcBatchSize() != 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    String statement(String tableName, WriteMode mode, List<String> columns) {
+        String key = mode + ":" + tableName + ":" + String.join(",", columns);
+        return statements.computeIfAbsent(key, k -> buildStatement(tableName, mode, columns));
+    }
+
+    private static String buildStatement(String tableName, WriteMode mode, List<String> columns) {
+        List<String> fields = new ArrayList<>(DEFAULT_FIELDS.length + columns.size());
+        for (String field : DEFAULT_FIELDS) {
+            fields.add(field);
+        }
+        fields.addAll(columns);
+        StringBuilder sql = new StringBuilder(mode == WriteMode.REPLACE ? "replace into " : "insert into ");
+        sql.append("`").append(tableName).append("` (");
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                sql.append(",");
+                values.append(",");
+            }
+            sql.append("`").append(fields.get(i)).append("`");
+            values.append("?");
+        }
+        sql.append(") values (").append(values).append(")");
+        return sql.toString();
+    }
+}
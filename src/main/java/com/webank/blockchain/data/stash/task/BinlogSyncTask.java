@@ -51,6 +51,13 @@ public class BinlogSyncTask implements ApplicationRunner {
     @Autowired
     private CleanManager cleanManager;
 
+    @Autowired
+    private PrefetchManager prefetchManager;
+    @Autowired
+    private TailManager tailManager;
+    @Autowired
+    private NewBlockWatcher newBlockWatcher;
+
     @Autowired
     private RecoverSnapshotService recoverSnapshotService;
 
@@ -64,14 +71,25 @@ public class BinlogSyncTask implements ApplicationRunner {
             readConfig.setFiles(3);
         }
         this.rollbackManager.rollbackUnfinished();
-        while (true) {
+        boolean prefetch = prefetchManager.isEnabled();
+        if (prefetch) {
+            //Make sure the local binlog exists before the first read, then keep downloading in background
             downloadManager.download();
+            prefetchManager.start();
+        }
+        while (true) {
+            if (!prefetch) {
+                downloadManager.download();
+            }
             checkManager.check();
             int blocks = blockReadManager.read();
             cleanManager.clean();
+            if(blocks == 0 && tailManager.isEnabled()) {
+                blocks = tail(prefetch);
+            }
             if(blocks == 0) {
-                //No new blocks, then wait 10 seconds
-                tryWaitNewBlocks(60000);
+                //No new blocks, then wait until new binlog bytes appear, at most 60 seconds
+                newBlockWatcher.awaitNewBlocks(60000);
             }
             if (!button) {
                 break;
@@ -79,11 +97,18 @@ public class BinlogSyncTask implements ApplicationRunner {
         }
     }
 
-    private void tryWaitNewBlocks(long waitMilSeconds){
-        try{
-            Thread.sleep(waitMilSeconds);
+    private int tail(boolean prefetch) throws Exception {
+        //The prefetcher appends the same local binlog
+        if (prefetch) {
+            prefetchManager.suspend();
+        }
+        try {
+            return tailManager.tail();
+        } finally {
+            if (prefetch) {
+                prefetchManager.resume();
+            }
         }
-        catch (Exception ex){}
     }
 
 }
@@ -0,0 +1,124 @@
+package com.webank.blockchain.data.stash.thread;
+
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @Description Tracks the blocks of a batch handed to the block handler without keeping their futures, so a stored
+ *              block is released at once. The blocks in flight are bounded by their binlog bytes, the reader waits
+ *              before handing over a block which exceeds the budget. The watermark is the block below which every
+ *              block is done.
+ */
+public class InFlightWindow {
+
+    private final long maxBytes;
+    private long inFlightBytes;
+    private int inFlight;
+    private int handed;
+    private int completed;
+    private long watermark;
+    //Blocks done above the watermark
+    private final TreeSet<Long> done = new TreeSet<>();
+    private Throwable error;
+
+    /**
+     * @param firstBlock first block of the batch
+     * @param maxBytes binlog bytes in flight, a single block larger than this is still handed over alone
+     */
+    public InFlightWindow(long firstBlock, long maxBytes){
+        this.watermark = firstBlock;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Wait until the bytes of the next block fit in the budget.
+     *
+     * @throws ExecutionException if a block of the batch failed
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException, ExecutionException {
+        while (error == null && inFlight > 0 && inFlightBytes + bytes > maxBytes) {
+            wait();
+        }
+        checkError();
+        inFlightBytes += bytes;
+        inFlight++;
+        handed++;
+    }
+
+    /**
+     * Track the block, the bytes must be acquired before the block is handed over.
+     */
+    public void track(long blockNumber, long bytes, CompletableFuture<?> future){
+        future.whenComplete((result, e) -> complete(blockNumber, bytes, e));
+    }
+
+    private synchronized void complete(long blockNumber, long bytes, Throwable e){
+        inFlightBytes -= bytes;
+        inFlight--;
+        if (e != null) {
+            if (error == null) {
+                error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            }
+        }
+        else {
+            completed++;
+            done.add(blockNumber);
+            while (!done.isEmpty() && done.first() == watermark) {
+                done.pollFirst();
+                watermark++;
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Wait until every block handed over is done.
+     *
+     * @throws ExecutionException if a block of the batch failed
+     */
+    public synchronized void await() throws InterruptedException, ExecutionException {
+        while (inFlight > 0) {
+            wait();
+        }
+        checkError();
+    }
+
+    private void checkError() throws ExecutionException {
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+    }
+
+    /**
+     * @return the block below which every block is done
+     */
+    public synchronized long getWatermark(){
+        return watermark;
+    }
+
+    /**
+     * @return true if no block was handed over
+     */
+    public synchronized boolean isEmpty(){
+        return handed == 0;
+    }
+
+    public synchronized int getCompleted(){
+        return completed;
+    }
+
+    public synchronized int getInFlight(){
+        return inFlight;
+    }
+
+    public synchronized long getInFlightBytes(){
+        return inFlightBytes;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "watermark " + watermark + ", in flight " + inFlight + " blocks " + inFlightBytes + " bytes";
+    }
+}
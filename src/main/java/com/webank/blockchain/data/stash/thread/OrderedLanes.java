@@ -0,0 +1,62 @@
+package com.webank.blockchain.data.stash.thread;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Single threaded lanes, every key is always run on the same lane, so the tasks of a key run one at a
+ *              time in submit order while tasks of different keys run in parallel. A full lane blocks the submitter,
+ *              running the task on the caller would break the order.
+ */
+public class OrderedLanes implements Closeable {
+
+    private final ThreadPoolExecutor[] lanes;
+
+    public OrderedLanes(int laneCount, int queueSize, String name) {
+        lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.DAYS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                    new DataStashThreadFactory(name), (r, e) -> {
+                        if (e.isShutdown()) {
+                            throw new RejectedExecutionException("lane is shut down");
+                        }
+                        try {
+                            e.getQueue().put(r);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(ex);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Run the task on the lane of the key, after the tasks submitted before for the same key.
+     */
+    public CompletableFuture<Void> submit(String key, Runnable task) {
+        return CompletableFuture.runAsync(task, lanes[lane(key)]);
+    }
+
+    int lane(String key) {
+        return Math.floorMod(key.hashCode(), lanes.length);
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.webank.blockchain.data.stash.thread;
+
+/**
+ * @Description Bounded ring buffer which restores the order of items produced out of order. Item n is put into slot
+ *              n % capacity and taken in sequence order, a producer ahead of the consumer by the capacity waits.
+ */
+public class SequencedRingBuffer<T> {
+
+    private final Object[] slots;
+    //Sequence of the next item to take
+    private long head;
+    private int size;
+
+    public SequencedRingBuffer(int capacity){
+        this.slots = new Object[capacity];
+    }
+
+    public synchronized void put(long sequence, T item) throws InterruptedException {
+        while (sequence >= head + slots.length) {
+            wait();
+        }
+        int slot = (int) (sequence % slots.length);
+        if (sequence < head || slots[slot] != null) {
+            throw new IllegalStateException("sequence " + sequence + " is already put");
+        }
+        slots[slot] = item;
+        size++;
+        notifyAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized T take() throws InterruptedException {
+        int slot = (int) (head % slots.length);
+        while (slots[slot] == null) {
+            wait();
+        }
+        T item = (T) slots[slot];
+        slots[slot] = null;
+        head++;
+        size--;
+        notifyAll();
+        return item;
+    }
+
+    /**
+     * @return items put and not taken yet, including those waiting for an earlier sequence
+     */
+    public synchronized int size(){
+        return size;
+    }
+
+    public int capacity(){
+        return slots.length;
+    }
+}
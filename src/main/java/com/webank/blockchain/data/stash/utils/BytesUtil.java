@@ -13,6 +13,8 @@
  */
 package com.webank.blockchain.data.stash.utils;
 
+import java.nio.ByteBuffer;
+
 /**
  * BytesUtil
  *
@@ -65,4 +67,24 @@ public class BytesUtil {
 	    byte[] dest = subBytes(src, srcPos, 8);
 	    return byteArrayToLong(dest);
 	}
+
+	public static byte[] subBytes(ByteBuffer src, int srcPos, int length) {
+		byte[] dest = new byte[length];
+		ByteBuffer dup = src.duplicate();
+		dup.position(srcPos);
+		dup.get(dest);
+		return dest;
+	}
+
+	public static int byte4FromSrcToInt(ByteBuffer src, int srcPos){
+	    return src.getInt(srcPos);
+	}
+
+	public static long byte4UnsignFromSrcToLong(ByteBuffer src, int srcPos){
+	    return src.getInt(srcPos) & 0xFFFFFFFFL;
+	}
+
+	public static long byte8FromSrcToLong(ByteBuffer src, int srcPos){
+	    return src.getLong(srcPos);
+	}
 }
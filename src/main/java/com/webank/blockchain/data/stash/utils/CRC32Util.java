@@ -13,6 +13,8 @@
  */
 package com.webank.blockchain.data.stash.utils;
 
+import java.nio.ByteBuffer;
+
 
 /**
  * CRCUtil
@@ -44,16 +46,40 @@ public class CRC32Util {
     }
     
     public static long getCrc32(byte[] bytes) {
+        return getCrc32(bytes, 0, bytes.length);
+    }
+
+    public static long getCrc32(byte[] bytes, int offset, int length) {
         long resultCrcValue = 0x00000000ffffffffL;
-        for (int i = 0; i < bytes.length; i++) {
+        for (int i = offset; i < offset + length; i++) {
             int index = (int) ((resultCrcValue ^ bytes[i]) & 0xff);
             resultCrcValue = crc32Table[index] ^ (resultCrcValue >> 8);
         }
         resultCrcValue = resultCrcValue ^ 0x00000000ffffffffL;
         return resultCrcValue;
     }
+
+    /**
+     * Crc32 of the remaining bytes of the buffer, the position is not changed.
+     */
+    public static long getCrc32(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return getCrc32(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        long resultCrcValue = 0x00000000ffffffffL;
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            int index = (int) ((resultCrcValue ^ buffer.get(i)) & 0xff);
+            resultCrcValue = crc32Table[index] ^ (resultCrcValue >> 8);
+        }
+        resultCrcValue = resultCrcValue ^ 0x00000000ffffffffL;
+        return resultCrcValue;
+    }
     
     
+    public static boolean equals(ByteBuffer b, long value){
+        return getCrc32(b) == value;
+    }
+
     public static boolean equals(byte[] b, long value){
         long compareValue = getCrc32(b);
         if(compareValue == value){
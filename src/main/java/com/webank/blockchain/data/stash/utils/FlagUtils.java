@@ -1,5 +1,6 @@
 package com.webank.blockchain.data.stash.utils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,6 +32,22 @@ public class FlagUtils {
 
     }
 
+    /**
+     * Count the setted fields like {@link #onlySettedFields(String[], byte[])}, reading the used flags in place.
+     */
+    public static int countSettedFields(int fieldCount, ByteBuffer src, int flagsIndex){
+        int count = 0;
+        int len = fieldCount - 3;
+        for(int i=0;i<len;i++){
+            byte b = src.get(flagsIndex + (i >> 3));
+            int bitVal = (b >> (7-i)) & 1;
+            if(bitVal == 1){
+                count++;
+            }
+        }
+        return count;
+    }
+
     public static String toBinaryString(byte[] input)
     {
         String result = "";
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.verify;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.hash.HashCode;
+
+import lombok.Data;
+
+/**
+ * BlockDigest
+ *
+ * @Description: Canonical digests of the table sections of a block binlog. A null digest marks a section the
+ *               digest can not decide on, such as a header table with more than one entry.
+ *
+ */
+@Data
+public class BlockDigest {
+
+    private long blockNum;
+    private int dataCount;
+    private Map<String, HashCode> tables = new HashMap<>();
+
+    /**
+     * Same rule as the full comparison: every table of this block must be in the other one with the same content.
+     *
+     * @return true if the blocks are equal, false if they may differ
+     */
+    public boolean matches(BlockDigest other) {
+        if (blockNum != other.blockNum || dataCount != other.dataCount) {
+            return false;
+        }
+        for (Map.Entry<String, HashCode> table : tables.entrySet()) {
+            HashCode digest = table.getValue();
+            if (digest == null || !digest.equals(other.tables.get(table.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.verify;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
+import com.webank.blockchain.data.stash.parser.SchemaRegistry;
+import com.webank.blockchain.data.stash.parser.TableSchema;
+import com.webank.blockchain.data.stash.utils.BytesUtil;
+
+/**
+ * BlockDigester
+ *
+ * @Description: Digests the table sections of a block straight from the binlog bytes, no entry is built. The
+ *               digest follows the full comparison of {@link ComparisonValidation}: entries are taken in id order,
+ *               the status is left out, so are the sigs of the header table and the value of the hash to block
+ *               table, and only the entry count of the tx hash table is compared. Equal digests mean equal raw
+ *               values, so the full comparison would pass too.
+ *
+ */
+public class BlockDigester {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final SchemaRegistry schemaRegistry = new SchemaRegistry();
+
+    /**
+     * @param block the block body, the crc32 excluded
+     */
+    public BlockDigest digest(ByteBuffer block) {
+        BlockDigest digest = new BlockDigest();
+        digest.setBlockNum(BytesUtil.byte8FromSrcToLong(block, 0));
+        int dataCount = BytesUtil.byte4FromSrcToInt(block, 8);
+        digest.setDataCount(dataCount);
+        ByteBuffer view = block.duplicate();
+
+        int dataIndex = 12;
+        for (int i = 0; i < dataCount; i++) {
+            int nameLen = block.get(dataIndex) & 0xFF;
+            String tableName = new String(BytesUtil.subBytes(block, dataIndex + 1, nameLen));
+            int fieldsLen = BytesUtil.byte4FromSrcToInt(block, dataIndex + nameLen + 1);
+            int fieldsIndex = dataIndex + nameLen + 5;
+            TableSchema schema = schemaRegistry.getSchema(tableName,
+                    new String(BytesUtil.subBytes(block, fieldsIndex, fieldsLen)));
+
+            TableDigest table = new TableDigest(tableName);
+            //The field names of the columns
+            table.hasher.putBytes(range(view, fieldsIndex, fieldsLen));
+            // dirty entrys, then new entrys
+            int entryIndex = digestEntrys(table, schema, block, view, fieldsIndex + fieldsLen);
+            dataIndex = digestEntrys(table, schema, block, view, entryIndex);
+            digest.getTables().put(tableName, table.comparable ? table.hasher.hash() : null);
+        }
+        return digest;
+    }
+
+    private int digestEntrys(TableDigest table, TableSchema schema, ByteBuffer block, ByteBuffer view,
+            int entryIndex) {
+        int entryCount = BytesUtil.byte4FromSrcToInt(block, entryIndex);
+        entryIndex += 4;
+        //Sorted by id, the first of the same id is kept, as the entry set does
+        Map<Long, HashCode> entrys = new TreeMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            long id = BytesUtil.byte8FromSrcToLong(block, entryIndex);
+            TableSchema.ColumnLayout layout = schema.layout(block, entryIndex + 9);
+            int valueIndex = entryIndex + 9 + schema.getUsedFlagBytesCount();
+            Hasher entry = table.countOnly ? null : HASH.newHasher().putInt(layout.getColumnCount());
+            for (int j = 0; j < layout.getColumnCount(); j++) {
+                int valueLen = BytesUtil.byte4FromSrcToInt(block, valueIndex);
+                if (entry != null) {
+                    if (schema.getField(j).equals(table.ignoredField)) {
+                        entry.putInt(-1);
+                    } else {
+                        entry.putInt(valueLen).putBytes(range(view, valueIndex + 4, valueLen));
+                    }
+                }
+                valueIndex += valueLen + 4;
+            }
+            if (!entrys.containsKey(id)) {
+                entrys.put(id, entry == null ? null : entry.hash());
+            }
+            entryIndex = valueIndex;
+        }
+
+        table.hasher.putInt(entrys.size());
+        //The full comparison only accepts a single header or hash entry
+        if (table.ignoredField != null && entrys.size() > 1) {
+            table.comparable = false;
+        }
+        if (!table.countOnly) {
+            for (Map.Entry<Long, HashCode> entry : entrys.entrySet()) {
+                table.hasher.putLong(entry.getKey()).putBytes(entry.getValue().asBytes());
+            }
+        }
+        return entryIndex;
+    }
+
+    private static ByteBuffer range(ByteBuffer view, int offset, int length) {
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
+    private static class TableDigest {
+        private final Hasher hasher = HASH.newHasher();
+        private final String ignoredField;
+        private final boolean countOnly;
+        private boolean comparable = true;
+
+        private TableDigest(String tableName) {
+            if (tableName.equals(DBStaticTableConstants.SYS_HASH_2_HEADER_TABLE)) {
+                //Each block headers may collect multiple sigs
+                ignoredField = "sigs";
+            } else if (tableName.equals(DBStaticTableConstants.SYS_HASH_2_BLOCK_TABLE)) {
+                ignoredField = "value";
+            } else {
+                ignoredField = null;
+            }
+            //The id of the tx hash table differs between binlogs since 2.2
+            countOnly = ignoredField == null
+                    && tableName.equalsIgnoreCase(DBStaticTableConstants.SYS_TX_HASH_2_BLOCK_TABLE);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.stash.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BlockVerifyPolicy
+ *
+ * @Description: Decides which blocks are verified against the secondary sources when system.verifySampling is 1:
+ *               every verifyInterval block, every block changing a governance table and a random sample of
+ *               verifySampleRate. The first verifyWindow blocks after startup or after a mismatch are all verified.
+ *
+ */
+@Service
+@Slf4j
+public class BlockVerifyPolicy {
+
+    /**
+     * System tables changed by governance. The other system tables are written by every block, so they would select
+     * every block.
+     */
+    private static final Set<String> GOVERNANCE_TABLES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            DBStaticTableConstants.SYS_TABLES_TABLE, DBStaticTableConstants.SYS_CONSENSUS_TABLE,
+            DBStaticTableConstants.SYS_CONFIG_TABLE, DBStaticTableConstants.SYS_TABLE_ACCESS_TABLE,
+            DBStaticTableConstants.SYS_CNS_TABLE, DBStaticTableConstants.SYS_COMMITTE_VOTES_TABLE)));
+
+    @Autowired
+    private SystemPropertyConfig config;
+
+    private boolean started;
+    private long fullVerifyUntil;
+
+    public boolean isSampling() {
+        return config.getVerifySampling() == 1;
+    }
+
+    /**
+     * @return true if the block should be verified against the secondary sources
+     */
+    public synchronized boolean shouldVerify(BinlogBlockInfo blockInfo) {
+        long blockNumber = blockInfo.getBlockNum();
+        if (!started) {
+            //A restart may follow a failed verification, so start with a full window
+            started = true;
+            fullVerifyUntil = blockNumber + config.getVerifyWindow();
+        }
+        if (blockNumber < fullVerifyUntil) {
+            return true;
+        }
+        if (config.getVerifyInterval() > 0 && blockNumber % config.getVerifyInterval() == 0) {
+            return true;
+        }
+        for (String table : blockInfo.getTables().keySet()) {
+            if (GOVERNANCE_TABLES.contains(table)) {
+                return true;
+            }
+        }
+        return ThreadLocalRandom.current().nextDouble() < config.getVerifySampleRate();
+    }
+
+    /**
+     * Called when the binlogs of a block differ, the following verifyWindow blocks are all verified.
+     */
+    public synchronized void onMismatch(long blockNumber) {
+        long until = blockNumber + 1 + config.getVerifyWindow();
+        if (until > fullVerifyUntil) {
+            log.warn("Binlogs of block {} differ, verify every block until {}", blockNumber, until);
+            fullVerifyUntil = until;
+        }
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.webank.blockchain.data.stash.verify;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -57,12 +58,44 @@ public class ComparisonValidation {
 
     @Autowired
     private BlockBytesParser parser;
+    @Autowired(required = false)
+    private BlockVerifyPolicy verifyPolicy;
+    private BlockDigester digester = new BlockDigester();
+
+    /**
+     * Compare the digests of the raw binlogs, a binlog is parsed and compared in full only if its digest differs.
+     */
     @UseTime
-    public boolean compareValidate(BinlogBlockInfo blockInfo, List<byte[]> blockBytesList){
+    public boolean digestValidate(BinlogBlockInfo blockInfo, List<ByteBuffer> blockBytesList){
         try{
+            BlockDigest first = digester.digest(blockBytesList.get(0));
             for (int i = 1; i < blockBytesList.size(); i++) {
+                if (first.matches(digester.digest(blockBytesList.get(i)))) {
+                    continue;
+                }
+                log.warn("Digest of block {} differs between binlog 0 and binlog of {}, compare in full",
+                        blockInfo.getBlockNum(), i);
+                onMismatch(blockInfo);
                 if (!compare(blockInfo, blockBytesList.get(i))) {
                     log.error("Compare binlog 0 and binlog of {}, something error", i);
+                    onMismatch(blockInfo);
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch (Exception ex){
+            throw new DataStashException(ex);
+        }
+    }
+
+    @UseTime
+    public boolean compareValidate(BinlogBlockInfo blockInfo, List<ByteBuffer> blockBytesList){
+        try{
+            for (int i = 1; i < blockBytesList.size(); i++) {
+                if (!compare(blockInfo, blockBytesList.get(i))) {
+                    log.error("Compare binlog 0 and binlog of {}, something error", i);
+                    onMismatch(blockInfo);
                     return false;
                 }
             }
@@ -74,7 +107,13 @@ public class ComparisonValidation {
 
     }
 
-    private boolean compare(BinlogBlockInfo blockInfo, byte[] blockBytes) throws Exception {
+    private void onMismatch(BinlogBlockInfo blockInfo) {
+        if (verifyPolicy != null) {
+            verifyPolicy.onMismatch(blockInfo.getBlockNum());
+        }
+    }
+
+    private boolean compare(BinlogBlockInfo blockInfo, ByteBuffer blockBytes) throws Exception {
         BinlogBlockInfo tempBlockInfo = parser.getBinlogBlockInfo(blockBytes);
         // 1. compare block num
         if (blockInfo.getBlockNum() != tempBlockInfo.getBlockNum()) {
@@ -128,8 +167,10 @@ public class ComparisonValidation {
     private boolean compareEntrys(String tableName, TreeSet<EntryInfo> entries1, TreeSet<EntryInfo> entries2) throws Exception
               {
         log.debug("Begin to compare entries of {}", tableName);
-        log.debug("entry1 : {}", JsonUtils.toJson(entries1));
-        log.debug("entry2 : {}", JsonUtils.toJson(entries2));
+        if (log.isDebugEnabled()) {
+            log.debug("entry1 : {}", JsonUtils.toJson(entries1));
+            log.debug("entry2 : {}", JsonUtils.toJson(entries2));
+        }
 
         boolean firstNullFlag = false;
         boolean secondNullFlag = false;
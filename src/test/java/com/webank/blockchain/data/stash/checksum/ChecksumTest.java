@@ -0,0 +1,94 @@
+package com.webank.blockchain.data.stash.checksum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.utils.CRC32Util;
+
+/**
+ * ChecksumTest
+ *
+ * @Description: ChecksumTest
+ */
+public class ChecksumTest {
+
+    private BlockChecksum crc32 = new Crc32Checksum();
+
+    @Test
+    public void testSameAsCRC32UtilOnBinlog() throws IOException {
+        List<ByteBuffer> frames = frames(readBinlog());
+        Assert.assertFalse(frames.isEmpty());
+        for (ByteBuffer frame : frames) {
+            int dataLength = frame.remaining() - BinlogConstants.CRC32_LENGTH;
+            long stored = frame.getInt(frame.position() + dataLength) & 0xFFFFFFFFL;
+            byte[] data = new byte[dataLength];
+            frame.duplicate().get(data);
+            long expected = CRC32Util.getCrc32(data);
+            Assert.assertEquals(stored, expected);
+
+            ByteBuffer slice = frame.duplicate();
+            slice.limit(slice.position() + dataLength);
+            slice = slice.slice();
+            Assert.assertEquals(expected, crc32.checksum(data, 0, data.length));
+            Assert.assertEquals(expected, crc32.checksum(slice));
+            Assert.assertEquals(expected, crc32.checksum(slice.asReadOnlyBuffer()));
+            ByteBuffer direct = ByteBuffer.allocateDirect(dataLength);
+            direct.put(slice.duplicate()).flip();
+            Assert.assertEquals(expected, crc32.checksum(direct));
+            //The position is not changed
+            Assert.assertEquals(0, slice.position());
+            Assert.assertEquals(0, direct.position());
+        }
+    }
+
+    @Test
+    public void testOffsetRanges() {
+        byte[] bytes = new byte[4096];
+        new Random(7).nextBytes(bytes);
+        for (int offset : new int[] { 0, 1, 13, 1000 }) {
+            int length = bytes.length - offset - 5;
+            Assert.assertEquals(CRC32Util.getCrc32(bytes, offset, length), crc32.checksum(bytes, offset, length));
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            Assert.assertEquals(CRC32Util.getCrc32(bytes, offset, length), crc32.checksum(buffer));
+        }
+    }
+
+    @Test
+    public void testCrc32c() {
+        //Check value of crc32c
+        byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+        BlockChecksum crc32c = new Crc32cChecksum();
+        Assert.assertEquals(0xE3069283L, crc32c.checksum(bytes, 0, bytes.length));
+        Assert.assertEquals(0xE3069283L, crc32c.checksum(ByteBuffer.wrap(bytes).asReadOnlyBuffer()));
+    }
+
+    private byte[] readBinlog() throws IOException {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    private List<ByteBuffer> frames(byte[] binlog) {
+        List<ByteBuffer> frames = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(binlog);
+        buffer.position(BinlogConstants.BLOCK_LENGTH);
+        while (buffer.remaining() >= BinlogConstants.BLOCK_LENGTH) {
+            int length = buffer.getInt();
+            ByteBuffer frame = buffer.slice();
+            frame.limit(length);
+            frames.add(frame);
+            buffer.position(buffer.position() + length);
+        }
+        return frames;
+    }
+}
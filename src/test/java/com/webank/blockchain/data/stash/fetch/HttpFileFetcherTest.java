@@ -0,0 +1,117 @@
+package com.webank.blockchain.data.stash.fetch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import cn.hutool.http.HttpException;
+
+/**
+ * HttpFileFetcherTest
+ *
+ * @Description: HttpFileFetcherTest
+ */
+public class HttpFileFetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private volatile byte[] content = new byte[0];
+    private volatile int status;
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testNewFileIsRenamedWhenComplete() throws IOException {
+        content = bytes(1000);
+        File destFile = new File(folder.getRoot(), "5.binlog");
+        Assert.assertEquals(1000, HttpFileFetcher.downloadFile(url(), destFile, null));
+        Assert.assertArrayEquals(content, Files.readAllBytes(destFile.toPath()));
+        Assert.assertFalse(new File(destFile.getPath() + HttpFileFetcher.PART_SUFFIX).exists());
+        //The newest binlog is appended in place
+        content = bytes(1500);
+        Assert.assertEquals(500, HttpFileFetcher.downloadFile(url(), destFile, null));
+        Assert.assertArrayEquals(content, Files.readAllBytes(destFile.toPath()));
+    }
+
+    @Test
+    public void testFailedFileIsNotVisible() throws IOException {
+        content = bytes(1000);
+        status = 500;
+        File destFile = new File(folder.getRoot(), "5.binlog");
+        try {
+            HttpFileFetcher.downloadFile(url(), destFile, null);
+            Assert.fail();
+        } catch (HttpException e) {
+            Assert.assertFalse(destFile.exists());
+        }
+        status = 0;
+        Assert.assertEquals(1000, HttpFileFetcher.downloadFile(url(), destFile, null));
+        Assert.assertArrayEquals(content, Files.readAllBytes(destFile.toPath()));
+    }
+
+    @Test
+    public void testEmptyFileIsNotVisible() throws IOException {
+        File destFile = new File(folder.getRoot(), "5.binlog");
+        Assert.assertEquals(0, HttpFileFetcher.downloadFile(url(), destFile, null));
+        Assert.assertFalse(destFile.exists());
+        Assert.assertFalse(new File(destFile.getPath() + HttpFileFetcher.PART_SUFFIX).exists());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = content;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int from = range == null ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+        if (status != 0) {
+            exchange.sendResponseHeaders(status, -1);
+        } else if (from >= body.length) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes */" + body.length);
+            exchange.sendResponseHeaders(416, -1);
+        } else {
+            exchange.getResponseHeaders().add("Content-Range",
+                    "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+            exchange.sendResponseHeaders(206, body.length - from);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body, from, body.length - from);
+            }
+        }
+        exchange.close();
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/5.binlog";
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 7);
+        for (int i = 0; i < length; i += 13) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
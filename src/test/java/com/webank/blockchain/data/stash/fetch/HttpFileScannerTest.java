@@ -0,0 +1,113 @@
+package com.webank.blockchain.data.stash.fetch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HttpFileScannerTest
+ *
+ * @Description: HttpFileScannerTest
+ */
+public class HttpFileScannerTest {
+
+    private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 10:00:00 GMT";
+
+    private HttpServer server;
+
+    @After
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testNotModifiedNewestGrown() throws Exception {
+        AtomicLong newestLength = new AtomicLong(200);
+        AtomicInteger listings = new AtomicInteger();
+        String url = serve(true, newestLength, listings);
+
+        BinlogFileDir first = HttpFileScanner.scan(url);
+        Assert.assertEquals(200, first.getBinlogFileInfoList().last().getLength());
+
+        // the directory is unchanged, so is the newest file
+        Assert.assertSame(first, HttpFileScanner.scan(url));
+
+        // the directory answers 304 but the newest file has grown
+        newestLength.set(300);
+        BinlogFileDir grown = HttpFileScanner.scan(url);
+        Assert.assertEquals(2, grown.getSize());
+        Assert.assertEquals(100, grown.getBinlogFileInfoList().first().getLength());
+        Assert.assertEquals(300, grown.getBinlogFileInfoList().last().getLength());
+        Assert.assertEquals(200, first.getBinlogFileInfoList().last().getLength());
+        Assert.assertSame(grown, HttpFileScanner.scan(url));
+        Assert.assertEquals(4, listings.get());
+    }
+
+    @Test
+    public void testSameBodyNotParsedAgain() throws Exception {
+        AtomicLong newestLength = new AtomicLong(200);
+        AtomicInteger listings = new AtomicInteger();
+        String url = serve(false, newestLength, listings);
+
+        BinlogFileDir first = HttpFileScanner.scan(url);
+        Assert.assertSame(first, HttpFileScanner.scan(url));
+        Assert.assertEquals(2, listings.get());
+
+        newestLength.set(300);
+        BinlogFileDir grown = HttpFileScanner.scan(url);
+        Assert.assertNotSame(first, grown);
+        Assert.assertEquals(300, grown.getBinlogFileInfoList().last().getLength());
+    }
+
+    /**
+     * Serve a listing of 0.binlog with 100 bytes and 1.binlog with newestLength bytes. With validators the listing
+     * carries a Last-Modified header and a conditional request is answered with 304.
+     */
+    private String serve(boolean validators, AtomicLong newestLength, AtomicInteger listings) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/1.binlog")) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes 0-0/" + newestLength.get());
+                send(exchange, 206, new byte[1]);
+                return;
+            }
+            listings.incrementAndGet();
+            if (validators && LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            if (validators) {
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            }
+            send(exchange, 200, ("<html>\n<head><title>Index of /</title></head>\n<body>\n"
+                    + "<h1>Index of /</h1><hr><pre><a href=\"../\">../</a>\n"
+                    + "<a href=\"0.binlog\">0.binlog</a>          17-Oct-2026 09:00          100\n"
+                    + "<a href=\"1.binlog\">1.binlog</a>          17-Oct-2026 10:00          " + newestLength.get() + "\n"
+                    + "</pre><hr></body>\n</html>\n").getBytes(StandardCharsets.UTF_8));
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        exchange.close();
+    }
+}
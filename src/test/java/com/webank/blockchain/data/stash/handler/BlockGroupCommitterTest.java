@@ -0,0 +1,114 @@
+package com.webank.blockchain.data.stash.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+
+/**
+ * BlockGroupCommitterTest
+ *
+ * @Description: BlockGroupCommitterTest
+ */
+public class BlockGroupCommitterTest {
+
+    @Test
+    public void testGroups() throws Exception {
+        List<Long> opened = new ArrayList<>();
+        List<List<Long>> committed = Collections.synchronizedList(new ArrayList<>());
+        BlockGroupCommitter committer = new BlockGroupCommitter(opened::add, group -> commit(committed, group), 2,
+                1000, 60000);
+        try {
+            List<CompletableFuture<BinlogBlockInfo>> futures = new ArrayList<>();
+            for (long i = 0; i < 5; i++) {
+                futures.add(committer.add(block(i, 1)));
+            }
+            Assert.assertEquals(Arrays.asList(0L, 2L, 4L), opened);
+            Assert.assertEquals(Arrays.asList(Arrays.asList(0L, 1L), Arrays.asList(2L, 3L)), committed);
+            Assert.assertFalse(futures.get(4).isDone());
+            Assert.assertEquals(1, committer.getOpenBlocks());
+            committer.commitNow(block(5, 1));
+            Assert.assertEquals(Arrays.asList(Arrays.asList(0L, 1L), Arrays.asList(2L, 3L), Arrays.asList(4L),
+                    Arrays.asList(5L)), committed);
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(i, futures.get(i).get().getBlockNum());
+            }
+        } finally {
+            committer.close();
+        }
+    }
+
+    @Test
+    public void testRowBudget() {
+        List<List<Long>> committed = new ArrayList<>();
+        BlockGroupCommitter committer = new BlockGroupCommitter(n -> {}, group -> commit(committed, group), 100,
+                10, 60000);
+        try {
+            committer.add(block(0, 4));
+            committer.add(block(1, 4));
+            Assert.assertTrue(committed.isEmpty());
+            committer.add(block(2, 4));
+            Assert.assertEquals(Collections.singletonList(Arrays.asList(0L, 1L, 2L)), committed);
+        } finally {
+            committer.close();
+        }
+    }
+
+    @Test
+    public void testTimeBudget() throws Exception {
+        BlockGroupCommitter committer = new BlockGroupCommitter(n -> {},
+                group -> CompletableFuture.completedFuture(null), 100, 1000, 20);
+        try {
+            Assert.assertEquals(7, committer.add(block(7, 1)).get(5, TimeUnit.SECONDS).getBlockNum());
+            Assert.assertEquals(0, committer.getOpenBlocks());
+        } finally {
+            committer.close();
+        }
+    }
+
+    @Test
+    public void testCommitError() throws Exception {
+        BlockGroupCommitter committer = new BlockGroupCommitter(n -> {}, group -> {
+            throw new IllegalStateException("deadlock");
+        }, 2, 1000, 60000);
+        try {
+            CompletableFuture<BinlogBlockInfo> first = committer.add(block(0, 1));
+            CompletableFuture<BinlogBlockInfo> second = committer.add(block(1, 1));
+            for (CompletableFuture<BinlogBlockInfo> future : Arrays.asList(first, second)) {
+                try {
+                    future.get();
+                    Assert.fail();
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        } finally {
+            committer.close();
+        }
+    }
+
+    private static BinlogBlockInfo block(long number, int rows) {
+        return new BinlogBlockInfo().setBlockNum(number).setDataCount(rows);
+    }
+
+    private static CompletableFuture<?> commit(List<List<Long>> committed, List<BinlogBlockInfo> group) {
+        committed.add(numbers(group));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static List<Long> numbers(List<BinlogBlockInfo> group) {
+        List<Long> numbers = new ArrayList<>();
+        for (BinlogBlockInfo blockInfo : group) {
+            numbers.add(blockInfo.getBlockNum());
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,46 @@
+package com.webank.blockchain.data.stash.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.enums.DataStashExceptionCodeEnums;
+import com.webank.blockchain.data.stash.exception.DataStashException;
+
+/**
+ * BlockHandlerTest
+ *
+ * @Description: BlockHandlerTest
+ */
+public class BlockHandlerTest {
+
+    @Test
+    public void testGroupCommitWithTableLanes() {
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        config.setGroupCommit(1);
+        config.setTableLanes(4);
+        BlockHandler handler = new BlockHandler();
+        ReflectionTestUtils.setField(handler, "config", config);
+        try {
+            ReflectionTestUtils.invokeMethod(handler, "init");
+            Assert.fail("a group must not be split over the transactions of the lanes");
+        } catch (DataStashException e) {
+            Assert.assertEquals(DataStashExceptionCodeEnums.DATA_STASH_GROUP_COMMIT_WITH_TABLE_LANES,
+                    e.getCodeMessageEnums());
+        }
+        Assert.assertNull(ReflectionTestUtils.getField(handler, "sqlPool"));
+    }
+
+    @Test
+    public void testTableLanesWithoutGroupCommit() {
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        config.setTableLanes(4);
+        BlockHandler handler = new BlockHandler();
+        ReflectionTestUtils.setField(handler, "config", config);
+        ReflectionTestUtils.invokeMethod(handler, "init");
+        Assert.assertNotNull(ReflectionTestUtils.getField(handler, "tableLanes"));
+        Assert.assertNull(ReflectionTestUtils.getField(handler, "groupCommitter"));
+        ReflectionTestUtils.invokeMethod(handler, "destroy");
+    }
+}
@@ -0,0 +1,84 @@
+package com.webank.blockchain.data.stash.handler;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+
+/**
+ * BlockPipelineTest
+ *
+ * @Description: BlockPipelineTest
+ */
+public class BlockPipelineTest {
+
+    @Test
+    public void testStoreInOrder() throws Exception {
+        Random random = new Random(7);
+        List<Long> stored = Collections.synchronizedList(new ArrayList<>());
+        BlockPipeline pipeline = new BlockPipeline((blockNumber, blocks) -> {
+            sleep(random.nextInt(3));
+            return new BinlogBlockInfo().setBlockNum(blockNumber);
+        }, blockInfo -> {
+            stored.add(blockInfo.getBlockNum());
+            return CompletableFuture.completedFuture(blockInfo);
+        }, 4, 2, 3);
+        try {
+            List<CompletableFuture<BinlogBlockInfo>> futures = new ArrayList<>();
+            for (long i = 100; i < 300; i++) {
+                futures.add(pipeline.submit(i, Collections.singletonList(ByteBuffer.allocate(0))));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(100 + i, futures.get(i).get().getBlockNum());
+            }
+            Assert.assertEquals(200, stored.size());
+            for (int i = 0; i < stored.size(); i++) {
+                Assert.assertEquals(100L + i, stored.get(i).longValue());
+            }
+            Assert.assertEquals(0, pipeline.getStoreQueueDepth());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void testParseError() throws Exception {
+        BlockPipeline pipeline = new BlockPipeline((blockNumber, blocks) -> {
+            if (blockNumber == 1) {
+                throw new IllegalStateException("bad block");
+            }
+            return new BinlogBlockInfo().setBlockNum(blockNumber);
+        }, CompletableFuture::completedFuture, 2, 4, 4);
+        try {
+            CompletableFuture<BinlogBlockInfo> first = pipeline.submit(0, Collections.emptyList());
+            CompletableFuture<BinlogBlockInfo> second = pipeline.submit(1, Collections.emptyList());
+            CompletableFuture<BinlogBlockInfo> third = pipeline.submit(2, Collections.emptyList());
+            Assert.assertEquals(0, first.get().getBlockNum());
+            try {
+                second.get();
+                Assert.fail("parse error expected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertEquals(2, third.get().getBlockNum());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
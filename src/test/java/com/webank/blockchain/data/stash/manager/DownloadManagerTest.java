@@ -0,0 +1,239 @@
+package com.webank.blockchain.data.stash.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.webank.blockchain.data.stash.checksum.Crc32Checksum;
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.fetch.BinlogFileDir;
+import com.webank.blockchain.data.stash.fetch.BinlogFileInfo;
+import com.webank.blockchain.data.stash.fetch.HttpFileFetcher;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+
+/**
+ * DownloadManagerTest
+ *
+ * @Description: DownloadManagerTest
+ */
+public class DownloadManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<RemoteServerInfo> sources = Arrays.asList(source(0), source(1), source(2));
+
+    @Test
+    public void testOneSourceFails() throws Exception {
+        Set<RemoteServerInfo> downloaded = ConcurrentHashMap.newKeySet();
+        SourceHealthTracker tracker = tracker();
+        DownloadManager manager = new DownloadManager() {
+            @Override
+            public TreeSet<Long> downloadFirstItem(RemoteServerInfo server) throws IOException {
+                if (server == sources.get(1)) {
+                    throw new IOException("connection refused");
+                }
+                downloaded.add(server);
+                return new TreeSet<>();
+            }
+        };
+        init(manager, tracker, 3);
+        manager.downloadConcurrently();
+        Assert.assertEquals(2, downloaded.size());
+        Assert.assertFalse(downloaded.contains(sources.get(1)));
+        Assert.assertTrue(tracker.isHealthy(sources.get(0)));
+        Assert.assertFalse(tracker.isHealthy(sources.get(1)));
+        Assert.assertTrue(tracker.isHealthy(sources.get(2)));
+    }
+
+    @Test
+    public void testOverlappingPasses() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        DownloadManager manager = new DownloadManager() {
+            @Override
+            public TreeSet<Long> downloadFirstItem(RemoteServerInfo server) throws InterruptedException {
+                release.await();
+                calls.incrementAndGet();
+                return new TreeSet<>();
+            }
+        };
+        //One thread for three sources, the second pass queues behind the first one
+        init(manager, tracker(), 1);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) ReflectionTestUtils.getField(manager, "downloadPool");
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] passes = new Thread[2];
+        for (int i = 0; i < passes.length; i++) {
+            passes[i] = new Thread(() -> {
+                try {
+                    manager.downloadConcurrently();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            passes[i].start();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getQueue().size() < 5 && error.get() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (Thread pass : passes) {
+            pass.join(5000);
+        }
+        Assert.assertNull(error.get());
+        Assert.assertEquals(6, calls.get());
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testSegmentedDownload() throws Exception {
+        AtomicInteger ranges = new AtomicInteger();
+        byte[] binlog = readBinlog();
+        HttpServer server = serve(binlog, exchange -> {
+            ranges.incrementAndGet();
+            return true;
+        });
+        try {
+            File file = downloadSealed(server, binlog);
+            Assert.assertArrayEquals(binlog, Files.readAllBytes(file.toPath()));
+            Assert.assertEquals(3, ranges.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testFallbackOnFailedRange() throws Exception {
+        byte[] binlog = readBinlog();
+        //Every range but the first one fails, the single stream request has no range end
+        HttpServer server = serve(binlog, exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            return range.startsWith("bytes=0-") || range.endsWith("-");
+        });
+        try {
+            File file = downloadSealed(server, binlog);
+            Assert.assertArrayEquals(binlog, Files.readAllBytes(file.toPath()));
+            Assert.assertFalse(new File(file.getPath() + HttpFileFetcher.PART_SUFFIX).exists());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Download 0.binlog in 3 segments, a newer binlog exists so it's sealed.
+     */
+    private File downloadSealed(HttpServer server, byte[] binlog) throws IOException {
+        RemoteServerInfo source = new RemoteServerInfo()
+                .setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .setLocalFilePath(folder.getRoot().getPath() + File.separator);
+        List<RemoteServerInfo> servers = Arrays.asList(source);
+        ReadPropertyConfig readConfig = new ReadPropertyConfig();
+        readConfig.setDownloadSegments(3);
+        readConfig.setSegmentThreshold(1);
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        SourceHealthTracker tracker = new SourceHealthTracker();
+        ReflectionTestUtils.setField(tracker, "sources", servers);
+        ReflectionTestUtils.setField(tracker, "config", config);
+        ReflectionTestUtils.invokeMethod(tracker, "init");
+        BinlogFileCatalog catalog = new BinlogFileCatalog("binlog");
+        DownloadManager manager = new DownloadManager();
+        ReflectionTestUtils.setField(manager, "sources", servers);
+        ReflectionTestUtils.setField(manager, "systemPropertyConfig", config);
+        ReflectionTestUtils.setField(manager, "readPropertyConfig", readConfig);
+        ReflectionTestUtils.setField(manager, "binlogFileCatalog", catalog);
+        ReflectionTestUtils.setField(manager, "blockChecksum", new Crc32Checksum());
+        ReflectionTestUtils.setField(manager, "sourceHealthTracker", tracker);
+        ReflectionTestUtils.invokeMethod(manager, "init");
+        BinlogFileDir dir = new BinlogFileDir();
+        dir.getBinlogFileInfoList().add(new BinlogFileInfo().setName("0.binlog").setIndex(0L)
+                .setLength(binlog.length));
+        dir.getBinlogFileInfoList().add(new BinlogFileInfo().setName("100.binlog").setIndex(100L).setLength(4));
+        Assert.assertEquals(binlog.length, manager.download(source, dir, 0));
+        Assert.assertEquals(Long.valueOf(0), catalog.last(source));
+        return new File(folder.getRoot(), "0.binlog");
+    }
+
+    /**
+     * Serve the binlog with byte ranges, a range the filter rejects gets a 500.
+     */
+    private HttpServer serve(byte[] binlog, RangeFilter filter) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/0.binlog", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (!filter.accept(exchange)) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            int from = Integer.parseInt(bounds[0]);
+            int to = bounds[1].isEmpty() ? binlog.length - 1 : Integer.parseInt(bounds[1]);
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + binlog.length);
+            exchange.sendResponseHeaders(206, to - from + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(binlog, from, to - from + 1);
+            }
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private interface RangeFilter {
+        boolean accept(HttpExchange exchange);
+    }
+
+    private byte[] readBinlog() throws IOException {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    private void init(DownloadManager manager, SourceHealthTracker tracker, int downloadThreads) {
+        ReadPropertyConfig readConfig = new ReadPropertyConfig();
+        readConfig.setConcurrentDownload("yes");
+        readConfig.setDownloadThreads(downloadThreads);
+        ReflectionTestUtils.setField(manager, "sources", sources);
+        ReflectionTestUtils.setField(manager, "readPropertyConfig", readConfig);
+        ReflectionTestUtils.setField(manager, "sourceHealthTracker", tracker);
+        ReflectionTestUtils.invokeMethod(manager, "init");
+    }
+
+    private SourceHealthTracker tracker() {
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        config.setSourceMaxErrors(1);
+        SourceHealthTracker tracker = new SourceHealthTracker();
+        ReflectionTestUtils.setField(tracker, "sources", sources);
+        ReflectionTestUtils.setField(tracker, "config", config);
+        ReflectionTestUtils.invokeMethod(tracker, "init");
+        return tracker;
+    }
+
+    private static RemoteServerInfo source(int item) {
+        return new RemoteServerInfo().setUrl("http://127.0.0.1:" + (8000 + item) + "/").setItem(item);
+    }
+}
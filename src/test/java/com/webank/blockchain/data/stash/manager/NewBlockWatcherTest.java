@@ -0,0 +1,125 @@
+package com.webank.blockchain.data.stash.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpServer;
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+import com.webank.blockchain.data.stash.read.BinlogFileCatalog;
+
+/**
+ * NewBlockWatcherTest
+ *
+ * @Description: NewBlockWatcherTest
+ */
+public class NewBlockWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<HttpServer> servers = new ArrayList<>();
+    private BlockReadManager blockReadManager = new BlockReadManager();
+
+    @After
+    public void stop() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    public void testWakeOnLocalBinlog() throws Exception {
+        NewBlockWatcher watcher = watcher(Arrays.asList(source(0, 100, 100, new AtomicInteger())));
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            blockReadManager.notifyNewBinlog();
+        }).start();
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(watcher.awaitNewBlocks(10000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        NewBlockWatcher watcher = watcher(Arrays.asList(source(0, 100, 100, polls)));
+        Assert.assertFalse(watcher.awaitNewBlocks(1000));
+        //Polls after 50, 100, 200, 200, 200, 200 and 50 ms, instead of every 50 ms
+        Assert.assertTrue(String.valueOf(polls.get()), polls.get() >= 4 && polls.get() <= 8);
+    }
+
+    @Test
+    public void testWakeOnSecondarySource() throws Exception {
+        AtomicInteger primaryPolls = new AtomicInteger();
+        NewBlockWatcher watcher = watcher(
+                Arrays.asList(source(0, 100, 100, primaryPolls), source(1, 100, 200, new AtomicInteger())));
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(watcher.awaitNewBlocks(10000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(1, primaryPolls.get());
+    }
+
+    private NewBlockWatcher watcher(List<RemoteServerInfo> sources) {
+        ReadPropertyConfig readConfig = new ReadPropertyConfig();
+        readConfig.setPollMinInterval(50);
+        readConfig.setPollMaxInterval(200);
+        SourceHealthTracker tracker = new SourceHealthTracker();
+        ReflectionTestUtils.setField(tracker, "sources", sources);
+        ReflectionTestUtils.setField(tracker, "config", new SystemPropertyConfig());
+        ReflectionTestUtils.invokeMethod(tracker, "init");
+        NewBlockWatcher watcher = new NewBlockWatcher();
+        ReflectionTestUtils.setField(watcher, "sources", sources);
+        ReflectionTestUtils.setField(watcher, "readPropertyConfig", readConfig);
+        ReflectionTestUtils.setField(watcher, "blockReadManager", blockReadManager);
+        ReflectionTestUtils.setField(watcher, "binlogFileCatalog", new BinlogFileCatalog("binlog"));
+        ReflectionTestUtils.setField(watcher, "sourceHealthTracker", tracker);
+        return watcher;
+    }
+
+    /**
+     * A source with 0.binlog of localLength bytes on local disk and remoteLength bytes in the listing of the server.
+     */
+    private RemoteServerInfo source(int item, long localLength, long remoteLength, AtomicInteger polls)
+            throws IOException {
+        File dir = folder.newFolder(String.valueOf(item));
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "0.binlog"), "rw")) {
+            raf.setLength(localLength);
+        }
+        byte[] listing = ("<html>\n<head><title>Index of /</title></head>\n<body>\n"
+                + "<h1>Index of /</h1><hr><pre><a href=\"../\">../</a>\n"
+                + "<a href=\"0.binlog\">0.binlog</a>          17-Oct-2026 10:00          " + remoteLength + "\n"
+                + "</pre><hr></body>\n</html>\n").getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            polls.incrementAndGet();
+            exchange.sendResponseHeaders(200, listing.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(listing);
+            }
+            exchange.close();
+        });
+        server.start();
+        servers.add(server);
+        return new RemoteServerInfo().setItem(item).setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .setLocalFilePath(dir.getPath() + File.separator);
+    }
+}
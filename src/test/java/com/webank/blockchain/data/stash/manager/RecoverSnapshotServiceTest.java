@@ -0,0 +1,85 @@
+package com.webank.blockchain.data.stash.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
+import com.webank.blockchain.data.stash.db.model.SysTablesInfo;
+import com.webank.blockchain.data.stash.db.service.SysTablesInfoService;
+
+/**
+ * RecoverSnapshotServiceTest
+ *
+ * @Description: RecoverSnapshotServiceTest
+ */
+public class RecoverSnapshotServiceTest {
+
+    private List<String> recovered = Collections.synchronizedList(new ArrayList<>());
+    private RecoverSnapshotService service = new RecoverSnapshotService();
+
+    @Before
+    public void init() {
+        SysTablesInfoService tables = new SysTablesInfoService() {
+            @Override
+            public List<SysTablesInfo> selectAllTables() {
+                List<SysTablesInfo> list = new ArrayList<>();
+                for (String name : Arrays.asList("_sys_config_", "t_a", "t_b", "t_c",
+                        DBStaticTableConstants.SYS_HASH_2_BLOCK_TABLE)) {
+                    SysTablesInfo table = new SysTablesInfo();
+                    table.setTableName(name);
+                    list.add(table);
+                }
+                return list;
+            }
+
+            @Override
+            public int recoverTopBlock(String tableName) {
+                recovered.add(tableName);
+                return 1;
+            }
+        };
+        ReflectionTestUtils.setField(service, "sysTableInfoService", tables);
+        ReflectionTestUtils.setField(service, "config", new SystemPropertyConfig());
+        ReflectionTestUtils.invokeMethod(service, "init");
+    }
+
+    @After
+    public void destroy() {
+        ReflectionTestUtils.invokeMethod(service, "destroy");
+    }
+
+    @Test
+    public void testRecoverAll() {
+        service.markDirty("t_a");
+        service.recoverSnapshotFromDetailTables();
+        Collections.sort(recovered);
+        Assert.assertEquals(Arrays.asList("_sys_config_", "t_a", "t_b", "t_c"), recovered);
+        recovered.clear();
+        service.recoverDirtyTables();
+        Assert.assertTrue(recovered.isEmpty());
+    }
+
+    @Test
+    public void testRecoverDirty() {
+        service.markDirty("t_b");
+        service.markDirty("t_c");
+        service.markDirty("t_b");
+        service.markDirty(DBStaticTableConstants.SYS_HASH_2_BLOCK_TABLE);
+        service.markDirty("t_unknown");
+        service.recoverDirtyTables();
+        Collections.sort(recovered);
+        Assert.assertEquals(Arrays.asList("t_b", "t_c"), recovered);
+        recovered.clear();
+        service.recoverDirtyTables();
+        Assert.assertTrue(recovered.isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package com.webank.blockchain.data.stash.manager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+
+/**
+ * SourceHealthTrackerTest
+ *
+ * @Description: SourceHealthTrackerTest
+ */
+public class SourceHealthTrackerTest {
+
+    private List<RemoteServerInfo> sources = Arrays.asList(source(0), source(1), source(2));
+
+    @Test
+    public void testFirstSourceByDefault() {
+        SourceHealthTracker tracker = tracker(0);
+        tracker.onBlock(sources.get(2), 5000);
+        Assert.assertEquals(sources, tracker.selectPrimary());
+        Assert.assertEquals(Arrays.asList(sources.get(1), sources.get(2)), tracker.getSecondaries());
+    }
+
+    @Test
+    public void testSelectUpToDateSource() {
+        SourceHealthTracker tracker = tracker(1);
+        tracker.onBlock(sources.get(0), 1000);
+        tracker.onBlock(sources.get(1), 1500);
+        //Within the lag threshold, keep the primary
+        Assert.assertSame(sources.get(0), tracker.selectPrimary().get(0));
+        tracker.onBlock(sources.get(2), 2500);
+        List<RemoteServerInfo> ordered = tracker.selectPrimary();
+        Assert.assertEquals(Arrays.asList(sources.get(2), sources.get(0), sources.get(1)), ordered);
+        Assert.assertSame(sources.get(2), tracker.getPrimary());
+    }
+
+    @Test
+    public void testSkipUnhealthySource() {
+        SourceHealthTracker tracker = tracker(1);
+        tracker.onBlock(sources.get(1), 100);
+        tracker.onDownload(sources.get(2), 1000, 10);
+        for (int i = 0; i < 3; i++) {
+            tracker.onError(sources.get(0));
+        }
+        Assert.assertFalse(tracker.isHealthy(sources.get(0)));
+        //Same last block, the faster source wins
+        tracker.onBlock(sources.get(2), 100);
+        Assert.assertSame(sources.get(2), tracker.selectPrimary().get(0));
+        tracker.onDownload(sources.get(0), 0, 10);
+        Assert.assertTrue(tracker.isHealthy(sources.get(0)));
+    }
+
+    private SourceHealthTracker tracker(int selectPrimary) {
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        config.setSelectPrimary(selectPrimary);
+        config.setSourceLagThreshold(1000);
+        SourceHealthTracker tracker = new SourceHealthTracker();
+        ReflectionTestUtils.setField(tracker, "sources", sources);
+        ReflectionTestUtils.setField(tracker, "config", config);
+        ReflectionTestUtils.invokeMethod(tracker, "init");
+        return tracker;
+    }
+
+    private static RemoteServerInfo source(int item) {
+        return new RemoteServerInfo().setUrl("http://127.0.0.1:" + (8000 + item) + "/").setItem(item);
+    }
+}
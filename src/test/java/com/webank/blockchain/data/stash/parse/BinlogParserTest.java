@@ -17,12 +17,26 @@ package com.webank.blockchain.data.stash.parse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.webank.blockchain.data.stash.config.ReadPropertyConfig;
 import com.webank.blockchain.data.stash.constants.BinlogConstants;
 import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+import com.webank.blockchain.data.stash.entity.ColumnInfo;
+import com.webank.blockchain.data.stash.entity.EntryInfo;
+import com.webank.blockchain.data.stash.entity.TableDataInfo;
 import com.webank.blockchain.data.stash.exception.DataStashException;
 import com.webank.blockchain.data.stash.parser.BlockBytesParser;
+import com.webank.blockchain.data.stash.parser.SchemaRegistry;
+import com.webank.blockchain.data.stash.parser.TableSchema;
 import com.webank.blockchain.data.stash.utils.BytesUtil;
 import com.webank.blockchain.data.stash.utils.CRC32Util;
 
@@ -56,6 +70,27 @@ public class BinlogParserTest {
 
     }
 
+    @Test
+    public void testSchemaRegistry(){
+        SchemaRegistry registry = new SchemaRegistry();
+        String fieldsStr = "key,value,enable_num,_status_,_num_,_id_";
+        TableSchema schema = registry.getSchema("c_1234", fieldsStr);
+        Assert.assertSame(schema, registry.getSchema("c_5678", new String(fieldsStr)));
+        Assert.assertNotSame(schema, registry.getSchema("_sys_hash_2_header_", fieldsStr));
+        Assert.assertEquals(TableSchema.BINARY_CODE, schema.getBinaryRule(1));
+        Assert.assertEquals(0, schema.getBinaryRule(0));
+        Assert.assertEquals(TableSchema.BINARY, registry.getSchema("_sys_hash_2_block_", fieldsStr).getBinaryRule(1));
+
+        for(byte usedFlag : new byte[]{-32, (byte)160, 0, 64}){
+            TableSchema.ColumnLayout layout = schema.layout(ByteBuffer.wrap(new byte[]{usedFlag}), 0);
+            String[] fields = fieldsStr.split(",");
+            Assert.assertEquals(FlagUtils.onlySettedFields(fields, new byte[]{usedFlag}).length, layout.getColumnCount());
+            Assert.assertSame(layout, schema.layout(ByteBuffer.wrap(new byte[]{usedFlag}), 0));
+        }
+        Assert.assertEquals(0, schema.layout(ByteBuffer.wrap(new byte[]{-32}), 0).getKeyIndex());
+        Assert.assertEquals(-1, schema.layout(ByteBuffer.wrap(new byte[]{0}), 0).getKeyIndex());
+    }
+
     @Test
     public void testBinLogParse() throws Exception{
 
@@ -80,6 +115,77 @@ public class BinlogParserTest {
         }
     }
 
+    @Test
+    public void testLazyParse() throws Exception{
+        BlockBytesParser parser = new BlockBytesParser();
+        List<ByteBuffer> blocks = readBlocks();
+        for(ByteBuffer block : blocks){
+            assertBlockEquals(parser.getBinlogBlockInfo(block, false),
+                    parser.getBinlogBlockInfo(block.asReadOnlyBuffer(), true));
+        }
+        Assert.assertEquals(22, blocks.size());
+    }
+
+    @Test
+    public void testParallelParse() throws Exception{
+        ReadPropertyConfig config = new ReadPropertyConfig();
+        config.setParallelParse("yes");
+        config.setParallelParseThreshold(1);
+        BlockBytesParser parallel = new BlockBytesParser();
+        ReflectionTestUtils.setField(parallel, "readPropertyConfig", config);
+        ReflectionTestUtils.invokeMethod(parallel, "init");
+        BlockBytesParser parser = new BlockBytesParser();
+        try{
+            for(ByteBuffer block : readBlocks()){
+                assertBlockEquals(parser.getBinlogBlockInfo(block, false), parallel.getBinlogBlockInfo(block, false));
+            }
+        }
+        finally {
+            ReflectionTestUtils.invokeMethod(parallel, "destroy");
+        }
+    }
+
+    private List<ByteBuffer> readBlocks() throws IOException{
+        byte[] binlog;
+        try(InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")){
+            binlog = IOUtils.toByteArray(is);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(binlog);
+        List<ByteBuffer> blocks = new ArrayList<>();
+        int index = 4;
+        while(index < binlog.length){
+            int blockLength = buffer.getInt(index);
+            blocks.add(ByteBuffer.wrap(binlog, index + 4, blockLength - BinlogConstants.CRC32_LENGTH).slice());
+            index += 4 + blockLength;
+        }
+        return blocks;
+    }
+
+    private void assertBlockEquals(BinlogBlockInfo expected, BinlogBlockInfo actual){
+        Assert.assertEquals(expected.getBlockNum(), actual.getBlockNum());
+        Assert.assertEquals(expected.getTables().keySet(), actual.getTables().keySet());
+        for(Map.Entry<String, TableDataInfo> e : expected.getTables().entrySet()){
+            TableDataInfo other = actual.getTables().get(e.getKey());
+            assertEntrysEqual(e.getValue().getDirtyEntrys().iterator(), other.getDirtyEntrys().iterator());
+            assertEntrysEqual(e.getValue().getNewEntrys().iterator(), other.getNewEntrys().iterator());
+        }
+    }
+
+    private void assertEntrysEqual(Iterator<EntryInfo> eager, Iterator<EntryInfo> lazy){
+        while(eager.hasNext()){
+            EntryInfo e = eager.next();
+            EntryInfo l = lazy.next();
+            Assert.assertEquals(e.getId(), l.getId());
+            Assert.assertEquals(e.getColumns().size(), l.getColumns().size());
+            for(int i = 0; i < e.getColumns().size(); i++){
+                ColumnInfo c = e.getColumns().get(i);
+                Assert.assertEquals(c.getColumnName(), l.getColumns().get(i).getColumnName());
+                Assert.assertEquals(c.getColumnValue(), l.getColumns().get(i).getColumnValue());
+            }
+        }
+        Assert.assertFalse(lazy.hasNext());
+    }
+
     private void testBlockData(byte[] blockData) throws Exception{
         BlockBytesParser parser = new BlockBytesParser();
         BinlogBlockInfo blockInfo = parser.getBinlogBlockInfo(blockData);
@@ -0,0 +1,77 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+
+/**
+ * BinlogBlockIndexTest
+ *
+ * @Description: BinlogBlockIndexTest
+ */
+public class BinlogBlockIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndSeek() throws IOException {
+        File binlog = copyBinlog();
+        long last;
+        try (BinlogBlockIndex index = new BinlogBlockIndex(binlog, 0);
+                MappedBinlogFile mapped = new MappedBinlogFile(binlog)) {
+            mapped.seek(BinlogConstants.BLOCK_LENGTH);
+            long offset = mapped.position();
+            ByteBuffer frame;
+            while ((frame = mapped.nextFrame()) != null) {
+                index.append(frame.getLong(0), offset);
+                //Blocks already indexed are ignored
+                index.append(frame.getLong(0), -1);
+                offset = mapped.position();
+            }
+            last = index.lastBlock();
+            Assert.assertTrue(last > 0);
+        }
+        try (BinlogBlockIndex index = new BinlogBlockIndex(binlog, 0);
+                MappedBinlogFile mapped = new MappedBinlogFile(binlog)) {
+            Assert.assertEquals(last, index.lastBlock());
+            for (long block = 0; block <= last; block++) {
+                mapped.seek(index.offset(block));
+                Assert.assertEquals(block, mapped.nextFrame().getLong(0));
+            }
+            Assert.assertEquals(-1, index.offset(last + 1));
+        }
+    }
+
+    @Test
+    public void testRebuild() throws IOException {
+        File binlog = copyBinlog();
+        //A stale index, written for another binlog
+        Files.write(BinlogBlockIndex.indexFile(binlog).toPath(), new byte[] { 0, 0, 0, 0, 0, 0, 0, 4, 1 });
+        BinlogBlockIndex.rebuild(binlog, 0);
+        try (BinlogBlockIndex index = new BinlogBlockIndex(binlog, 0);
+                MappedBinlogFile mapped = new MappedBinlogFile(binlog)) {
+            Assert.assertEquals(BinlogConstants.BLOCK_LENGTH, index.offset(0));
+            mapped.seek(index.lastOffset());
+            Assert.assertEquals(index.lastBlock(), mapped.nextFrame().getLong(0));
+            Assert.assertNull(mapped.nextFrame());
+        }
+    }
+
+    private File copyBinlog() throws IOException {
+        File binlog = new File(folder.getRoot(), "0.binlog");
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            Files.copy(is, binlog.toPath());
+        }
+        return binlog;
+    }
+}
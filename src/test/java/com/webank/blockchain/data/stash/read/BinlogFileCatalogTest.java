@@ -0,0 +1,55 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+
+/**
+ * BinlogFileCatalogTest
+ *
+ * @Description: BinlogFileCatalogTest
+ */
+public class BinlogFileCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws IOException {
+        for (String name : new String[] { "0.binlog", "100.binlog", "250.binlog", "300.binlog.bak", "1.binlog.part" }) {
+            folder.newFile(name);
+        }
+        RemoteServerInfo source = new RemoteServerInfo().setLocalFilePath(folder.getRoot().getPath() + File.separator);
+        BinlogFileCatalog catalog = new BinlogFileCatalog("binlog");
+        Assert.assertEquals(3, catalog.getFileIds(source).size());
+        Assert.assertEquals(Long.valueOf(100), catalog.floor(source, 249));
+        Assert.assertEquals(Long.valueOf(250), catalog.higher(source, 100));
+        Assert.assertNull(catalog.higher(source, 250));
+
+        //Changes on disk are only seen through the catalog updates
+        folder.newFile("400.binlog");
+        Assert.assertEquals(Long.valueOf(250), catalog.last(source));
+        catalog.add(source, 400);
+        Assert.assertEquals(Long.valueOf(400), catalog.last(source));
+        catalog.remove(source, 0);
+        Assert.assertNull(catalog.floor(source, 99));
+        catalog.refresh(source);
+        Assert.assertEquals(Long.valueOf(0), catalog.floor(source, 99));
+    }
+
+    @Test
+    public void testParseFileId() {
+        BinlogFileCatalog catalog = new BinlogFileCatalog("binlog");
+        Assert.assertEquals(Long.valueOf(12), catalog.parseFileId("12.binlog"));
+        Assert.assertNull(catalog.parseFileId("12.binlog.bak"));
+        Assert.assertNull(catalog.parseFileId("12.binlog.part"));
+        Assert.assertNull(catalog.parseFileId("a.binlog"));
+        Assert.assertNull(catalog.parseFileId(".binlog"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * BlockBufferPoolTest
+ *
+ * @Description: BlockBufferPoolTest
+ */
+public class BlockBufferPoolTest {
+
+    @Test
+    public void testReuse() {
+        BlockBufferPool pool = new BlockBufferPool(1024 * 1024);
+        PooledBuffer first = pool.acquire(5000);
+        ByteBuffer view = first.buffer();
+        Assert.assertTrue(view.isDirect());
+        Assert.assertEquals(5000, view.remaining());
+        Assert.assertEquals(8192, pool.getInUseBytes());
+        Assert.assertTrue(first.release());
+        Assert.assertEquals(0, pool.getInUseBytes());
+        Assert.assertEquals(8192, pool.getPooledBytes());
+
+        PooledBuffer second = pool.acquire(6000);
+        Assert.assertEquals(6000, second.buffer().remaining());
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(8192, pool.getAllocatedBytes());
+        Assert.assertEquals(0.5, pool.getHitRate(), 0.001);
+        second.release();
+    }
+
+    @Test
+    public void testRefCount() {
+        BlockBufferPool pool = new BlockBufferPool(1024 * 1024);
+        PooledBuffer buffer = pool.acquire(100);
+        buffer.retain();
+        Assert.assertFalse(buffer.release());
+        Assert.assertEquals(4096, pool.getInUseBytes());
+        Assert.assertTrue(buffer.release());
+        try {
+            buffer.release();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        try {
+            buffer.retain();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testPoolLimit() {
+        BlockBufferPool pool = new BlockBufferPool(4096);
+        PooledBuffer a = pool.acquire(4096);
+        PooledBuffer b = pool.acquire(4096);
+        a.release();
+        b.release();
+        Assert.assertEquals(4096, pool.getPooledBytes());
+        Assert.assertEquals(4096, pool.getAllocatedBytes());
+    }
+}
@@ -0,0 +1,96 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+
+/**
+ * BlockFrameAssemblerTest
+ *
+ * @Description: BlockFrameAssemblerTest
+ */
+public class BlockFrameAssemblerTest {
+
+    @Test
+    public void testChunkedStream() throws IOException {
+        byte[] binlog = readBinlog();
+        List<byte[]> expected = frames(binlog);
+        for (int chunkSize : new int[] { 1, 3, 7, 1024, binlog.length }) {
+            BlockFrameAssembler assembler = new BlockFrameAssembler(BinlogConstants.BLOCK_LENGTH);
+            List<byte[]> actual = new ArrayList<>();
+            for (int offset = 0; offset < binlog.length; offset += chunkSize) {
+                int length = Math.min(chunkSize, binlog.length - offset);
+                assembler.append(Arrays.copyOfRange(binlog, offset, offset + length), 0, length);
+                byte[] frame;
+                while ((frame = assembler.nextFrame()) != null) {
+                    actual.add(frame);
+                }
+            }
+            Assert.assertEquals(0, assembler.pending());
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertArrayEquals(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPartialFrame() throws IOException {
+        byte[] binlog = readBinlog();
+        BlockFrameAssembler assembler = new BlockFrameAssembler(BinlogConstants.BLOCK_LENGTH);
+        assembler.append(binlog, 0, binlog.length - 1);
+        byte[] frame;
+        int count = 0;
+        while ((frame = assembler.nextFrame()) != null) {
+            count++;
+        }
+        Assert.assertEquals(frames(binlog).size() - 1, count);
+        Assert.assertTrue(assembler.pending() > 0);
+        assembler.append(binlog, binlog.length - 1, 1);
+        Assert.assertNotNull(assembler.nextFrame());
+        Assert.assertEquals(0, assembler.pending());
+    }
+
+    @Test
+    public void testPooledFrames() throws IOException {
+        byte[] binlog = readBinlog();
+        List<byte[]> expected = frames(binlog);
+        BlockBufferPool pool = new BlockBufferPool(1024 * 1024);
+        BlockFrameAssembler assembler = new BlockFrameAssembler(BinlogConstants.BLOCK_LENGTH);
+        assembler.append(binlog, 0, binlog.length);
+        for (byte[] bytes : expected) {
+            PooledBuffer frame = assembler.nextFrame(pool);
+            Assert.assertEquals(ByteBuffer.wrap(bytes), frame.buffer());
+            frame.release();
+        }
+        Assert.assertNull(assembler.nextFrame(pool));
+        Assert.assertEquals(0, pool.getInUseBytes());
+    }
+
+    private byte[] readBinlog() throws IOException {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    private List<byte[]> frames(byte[] binlog) {
+        List<byte[]> frames = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(binlog);
+        buffer.position(BinlogConstants.BLOCK_LENGTH);
+        while (buffer.remaining() >= BinlogConstants.BLOCK_LENGTH) {
+            byte[] frame = new byte[buffer.getInt()];
+            buffer.get(frame);
+            frames.add(frame);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,85 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.utils.BytesUtil;
+import com.webank.blockchain.data.stash.utils.CRC32Util;
+
+/**
+ * MappedBinlogFileTest
+ *
+ * @Description: MappedBinlogFileTest
+ */
+public class MappedBinlogFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadFrames() throws IOException {
+        byte[] binlog = readBinlog();
+        File file = write(binlog, binlog.length);
+        int count = 0;
+        try (MappedBinlogFile mapped = new MappedBinlogFile(file)) {
+            mapped.seek(BinlogConstants.BLOCK_LENGTH);
+            ByteBuffer frame;
+            while ((frame = mapped.nextFrame()) != null) {
+                Assert.assertTrue(frame.isReadOnly());
+                ByteBuffer body = frame.duplicate();
+                body.limit(body.limit() - BinlogConstants.CRC32_LENGTH);
+                long checksum = BytesUtil.byte4UnsignFromSrcToLong(frame, frame.limit() - BinlogConstants.CRC32_LENGTH);
+                Assert.assertEquals(checksum, CRC32Util.getCrc32(body.slice()));
+                Assert.assertEquals(count, frame.getLong(0));
+                count++;
+            }
+            Assert.assertFalse(mapped.isPartialBlock());
+            Assert.assertEquals(binlog.length, mapped.position());
+        }
+        Assert.assertTrue(count > 0);
+    }
+
+    @Test
+    public void testGrowingFile() throws IOException {
+        byte[] binlog = readBinlog();
+        //Only the version header and part of the first block are written yet
+        File file = write(binlog, BinlogConstants.BLOCK_LENGTH + 10);
+        try (MappedBinlogFile mapped = new MappedBinlogFile(file)) {
+            mapped.seek(BinlogConstants.BLOCK_LENGTH);
+            Assert.assertNull(mapped.nextFrame());
+            Assert.assertTrue(mapped.isPartialBlock());
+            Assert.assertEquals(BinlogConstants.BLOCK_LENGTH, mapped.position());
+
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(binlog, BinlogConstants.BLOCK_LENGTH + 10, binlog.length - BinlogConstants.BLOCK_LENGTH - 10);
+            }
+            ByteBuffer frame = mapped.nextFrame();
+            Assert.assertNotNull(frame);
+            Assert.assertEquals(0, frame.getLong(0));
+        }
+    }
+
+    private File write(byte[] binlog, int length) throws IOException {
+        File file = folder.newFile("0.binlog");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(binlog, 0, length);
+        }
+        return file;
+    }
+
+    private byte[] readBinlog() throws IOException {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+
+/**
+ * MultiSourceBlockReaderTest
+ *
+ * @Description: MultiSourceBlockReaderTest
+ */
+public class MultiSourceBlockReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNextBinlogWithoutBlock() throws IOException {
+        byte[] binlog = readBinlog();
+        File dir = folder.newFolder("0");
+        write(new File(dir, "0.binlog"), binlog, binlog.length);
+        List<RemoteServerInfo> sources = Collections
+                .singletonList(new RemoteServerInfo().setItem(0).setLocalFilePath(dir.getPath() + File.separator));
+        BinlogFileCatalog catalog = new BinlogFileCatalog("binlog");
+        long next;
+        try (MultiSourceBlockReader reader = new MultiSourceBlockReader(sources, 0, catalog, "binlog")) {
+            next = readAll(reader) + 1;
+        }
+        //The next binlog is listed before any block is written to it
+        File nextFile = new File(dir, next + ".binlog");
+        Assert.assertTrue(nextFile.createNewFile());
+        catalog.add(sources.get(0), next);
+        try (MultiSourceBlockReader reader = new MultiSourceBlockReader(sources, 0, catalog, "binlog")) {
+            Assert.assertEquals(next - 1, readAll(reader));
+        }
+        //Once a block arrives, it's read from the next binlog
+        int frameStart = BinlogConstants.BLOCK_LENGTH * 2;
+        int frameLength = ByteBuffer.wrap(binlog).getInt(BinlogConstants.BLOCK_LENGTH);
+        write(nextFile, binlog, frameStart + frameLength);
+        try (MultiSourceBlockReader reader = new MultiSourceBlockReader(sources, next, catalog, "binlog")) {
+            List<ByteBuffer> block = reader.read();
+            Assert.assertNotNull(block);
+            Assert.assertEquals(ByteBuffer.wrap(binlog, frameStart, frameLength), block.get(0));
+            Assert.assertNull(reader.read());
+        }
+    }
+
+    /**
+     * @return the last block read
+     */
+    private long readAll(MultiSourceBlockReader reader) throws IOException {
+        long last = -1;
+        List<ByteBuffer> block;
+        while ((block = reader.read()) != null) {
+            Assert.assertFalse(block.contains(null));
+            last = block.get(0).getLong(0);
+        }
+        return last;
+    }
+
+    private void write(File file, byte[] binlog, int length) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(Arrays.copyOf(binlog, length));
+        }
+    }
+
+    private byte[] readBinlog() throws IOException {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+}
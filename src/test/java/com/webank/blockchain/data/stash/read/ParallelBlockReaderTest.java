@@ -0,0 +1,82 @@
+package com.webank.blockchain.data.stash.read;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.webank.blockchain.data.stash.entity.RemoteServerInfo;
+
+/**
+ * ParallelBlockReaderTest
+ *
+ * @Description: ParallelBlockReaderTest
+ */
+public class ParallelBlockReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSameAsSequential() throws IOException {
+        List<RemoteServerInfo> sources = sources(3);
+        BinlogFileCatalog catalog = new BinlogFileCatalog("binlog");
+        List<List<ByteBuffer>> expected = readAll(new MultiSourceBlockReader(sources, 5, catalog, "binlog"));
+        //A small read-ahead queue, the read-ahead threads block until the merge catches up
+        List<List<ByteBuffer>> actual =
+                readAll(new ParallelBlockReader(sources, 5, catalog, "binlog", 2, executor));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(5, actual.get(0).get(0).getLong(0));
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws IOException {
+        List<RemoteServerInfo> sources = sources(2);
+        try (BlockReader reader =
+                new ParallelBlockReader(sources, 0, new BinlogFileCatalog("binlog"), "binlog", 1, executor)) {
+            Assert.assertNotNull(reader.read());
+        }
+    }
+
+    private List<List<ByteBuffer>> readAll(BlockReader reader) throws IOException {
+        List<List<ByteBuffer>> blocks = new ArrayList<>();
+        try (BlockReader r = reader) {
+            List<ByteBuffer> block;
+            while ((block = r.read()) != null) {
+                blocks.add(block);
+            }
+        }
+        return blocks;
+    }
+
+    private List<RemoteServerInfo> sources(int count) throws IOException {
+        List<RemoteServerInfo> sources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File dir = folder.newFolder(String.valueOf(i));
+            try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+                Files.copy(is, new File(dir, "0.binlog").toPath());
+            }
+            sources.add(new RemoteServerInfo().setItem(i).setLocalFilePath(dir.getPath() + File.separator));
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,161 @@
+package com.webank.blockchain.data.stash.store;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.entity.ColumnInfo;
+import com.webank.blockchain.data.stash.entity.EntryInfo;
+
+/**
+ * BulkLoadWriterTest
+ *
+ * @Description: BulkLoadWriterTest
+ */
+public class BulkLoadWriterTest {
+
+    @Test
+    public void testEncode() {
+        EntryInfo entry = entry(7, 12, "a\tb\nc\\d", null);
+        Assert.assertEquals("7\t0x00\t0\t12\ta\\tb\\nc\\\\d\t\\N\n",
+                new String(BulkLoadWriter.encode(entry), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLoadProperties() {
+        Properties properties = BulkLoadWriter.loadProperties("root", null, "/data/binlogcache/bulkload");
+        Assert.assertEquals("root", properties.getProperty("user"));
+        Assert.assertNull(properties.getProperty("password"));
+        Assert.assertEquals("false", properties.getProperty("allowLoadLocalInfile"));
+        Assert.assertEquals("/data/binlogcache/bulkload", properties.getProperty("allowLoadLocalInfileInPath"));
+    }
+
+    @Test
+    public void testStatements() {
+        Assert.assertEquals("load data local infile 'stream' into table `t_test_d_` character set utf8 "
+                + "(`_id_`,`_hash_`,`_status_`,`_num_`,`name`,`item_id`)",
+                BulkLoadWriter.loadStatement("t_test_d_", Arrays.asList("name", "item_id")));
+        Assert.assertEquals("replace into `t_test` (`_id_`,`name`) select d.`_id_`,d.`name` from `t_test_d_` d"
+                + " join (select max(t.pk_id) pk_id from `t_test_d_` t join (select _id_, max(_num_) _num_ from"
+                + " `t_test_d_` group by _id_) m on t._id_ = m._id_ and t._num_ = m._num_ group by t._id_) top"
+                + " on d.pk_id = top.pk_id", BulkLoadWriter.rebuildStatement("t_test", Arrays.asList("_id_", "name")));
+    }
+
+    @Test
+    public void testBuffer() {
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        config.setBulkLoadBytes(64);
+        BulkLoadWriter writer = new BulkLoadWriter();
+        ReflectionTestUtils.setField(writer, "config", config);
+        List<EntryInfo> entries = new ArrayList<>();
+        entries.add(entry(1, 1, "x", "y"));
+        entries.add(entry(2, 1, "x", "y"));
+        writer.append("t_test", entries);
+        long bytes = BulkLoadWriter.encode(entries.get(0)).length + BulkLoadWriter.encode(entries.get(1)).length;
+        Assert.assertEquals(bytes, writer.getBufferedBytes());
+        Assert.assertFalse(writer.isFull());
+        writer.append("t_other", entries);
+        writer.append("t_test", entries);
+        Assert.assertTrue(writer.isFull());
+        Assert.assertEquals(bytes * 3, writer.getBufferedBytes());
+    }
+
+    @Test
+    public void testAvailable() {
+        BulkLoadWriter writer = probeWriter(true, null);
+        Assert.assertTrue(writer.isAvailable());
+        Assert.assertNull(writer.getRefusedBy());
+    }
+
+    @Test
+    public void testServerRefusal() {
+        BulkLoadWriter writer = probeWriter(false, null);
+        Assert.assertFalse(writer.isAvailable());
+        Assert.assertEquals(BulkLoadWriter.SERVER, writer.getRefusedBy());
+    }
+
+    @Test
+    public void testClientRefusal() {
+        //The server has local_infile on but the connector didn't offer local data
+        BulkLoadWriter writer = probeWriter(true, new SQLException(
+                "Loading local data is disabled; this must be enabled on both the client and server sides", "42000",
+                3948));
+        Assert.assertFalse(writer.isAvailable());
+        Assert.assertEquals(BulkLoadWriter.CLIENT, writer.getRefusedBy());
+
+        //Refused by the connector itself
+        writer = probeWriter(true, new SQLException("Server asked for stream in response to \"LOAD DATA LOCAL INFILE\" "
+                + "but functionality is not enabled at client by setting \"allowLoadLocalInfile=true\" or specifying "
+                + "a path with 'allowLoadLocalInfileInPath'.", "S1000"));
+        Assert.assertFalse(writer.isAvailable());
+        Assert.assertEquals(BulkLoadWriter.CLIENT, writer.getRefusedBy());
+    }
+
+    /**
+     * A writer whose load connection reports local_infile of the server and fails the load with loadError.
+     */
+    private BulkLoadWriter probeWriter(boolean localInfile, SQLException loadError) {
+        ResultSet rs = proxy(ResultSet.class, (name, args) -> name.equals("next") ? Boolean.TRUE
+                : name.equals("getBoolean") ? Boolean.valueOf(localInfile) : null);
+        JdbcStatement statement = proxy(JdbcStatement.class, (name, args) -> {
+            switch (name) {
+                case "executeQuery":
+                    return rs;
+                case "execute":
+                    return false;
+                case "executeUpdate":
+                    if (loadError != null) {
+                        throw loadError;
+                    }
+                    return 0;
+                default:
+                    return null;
+            }
+        });
+        Connection connection = proxy(Connection.class, (name, args) -> name.equals("createStatement") ? statement
+                : null);
+        return new BulkLoadWriter() {
+            @Override
+            Connection openLoadConnection() {
+                return connection;
+            }
+        };
+    }
+
+    private interface Handler {
+        Object invoke(String name, Object[] args) throws SQLException;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> method.getName().equals("unwrap") ? proxy
+                        : handler.invoke(method.getName(), args));
+    }
+
+    private EntryInfo entry(long id, long num, String name, String itemId) {
+        EntryInfo entry = new EntryInfo();
+        entry.setId(id);
+        entry.setNum(num);
+        ColumnInfo c1 = new ColumnInfo();
+        c1.setColumnName("name");
+        c1.setColumnValue(name);
+        ColumnInfo c2 = new ColumnInfo();
+        c2.setColumnName("item_id");
+        c2.setColumnValue(itemId);
+        entry.setColumns(Arrays.asList(c1, c2));
+        return entry;
+    }
+}
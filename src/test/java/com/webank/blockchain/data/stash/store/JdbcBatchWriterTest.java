@@ -0,0 +1,38 @@
+package com.webank.blockchain.data.stash.store;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.webank.blockchain.data.stash.store.JdbcBatchWriter.WriteMode;
+
+/**
+ * JdbcBatchWriterTest
+ *
+ * @Description: JdbcBatchWriterTest
+ */
+public class JdbcBatchWriterTest {
+
+    private JdbcBatchWriter writer = new JdbcBatchWriter();
+
+    @Test
+    public void testStatements() {
+        List<String> columns = Arrays.asList("name", "item_id");
+        Assert.assertEquals(
+                "replace into `t_test` (`_id_`,`_hash_`,`_status_`,`_num_`,`name`,`item_id`) values (?,?,?,?,?,?)",
+                writer.statement("t_test", WriteMode.REPLACE, columns));
+        Assert.assertEquals(
+                "insert into `t_test_d_` (`_id_`,`_hash_`,`_status_`,`_num_`,`name`,`item_id`) values (?,?,?,?,?,?)",
+                writer.statement("t_test_d_", WriteMode.INSERT, columns));
+    }
+
+    @Test
+    public void testStatementCache() {
+        String sql = writer.statement("t_test", WriteMode.REPLACE, Arrays.asList("name"));
+        Assert.assertSame(sql, writer.statement("t_test", WriteMode.REPLACE, Arrays.asList("name")));
+        Assert.assertNotSame(sql, writer.statement("t_test", WriteMode.REPLACE, Arrays.asList("name", "item_id")));
+        Assert.assertNotSame(sql, writer.statement("t_test", WriteMode.INSERT, Arrays.asList("name")));
+    }
+}
@@ -0,0 +1,93 @@
+package com.webank.blockchain.data.stash.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * InFlightWindowTest
+ *
+ * @Description: InFlightWindowTest
+ */
+public class InFlightWindowTest {
+
+    @Test
+    public void testWatermark() throws Exception {
+        InFlightWindow window = new InFlightWindow(10, 1000);
+        Assert.assertTrue(window.isEmpty());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long i = 10; i < 15; i++) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            window.acquire(100);
+            window.track(i, 100, future);
+            futures.add(future);
+        }
+        Assert.assertEquals(500, window.getInFlightBytes());
+        futures.get(1).complete(null);
+        futures.get(3).complete(null);
+        Assert.assertEquals(10, window.getWatermark());
+        futures.get(0).complete(null);
+        Assert.assertEquals(12, window.getWatermark());
+        futures.get(2).complete(null);
+        futures.get(4).complete(null);
+        window.await();
+        Assert.assertEquals(15, window.getWatermark());
+        Assert.assertEquals(5, window.getCompleted());
+        Assert.assertEquals(0, window.getInFlightBytes());
+    }
+
+    @Test
+    public void testByteBudget() throws Exception {
+        InFlightWindow window = new InFlightWindow(0, 250);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        window.acquire(200);
+        window.track(0, 200, first);
+        AtomicLong acquired = new AtomicLong(-1);
+        Thread reader = new Thread(() -> {
+            try {
+                window.acquire(100);
+                acquired.set(System.nanoTime());
+            } catch (Exception e) {
+            }
+        });
+        reader.start();
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertEquals(-1, acquired.get());
+        first.complete(null);
+        reader.join(5000);
+        Assert.assertTrue(acquired.get() > 0);
+        Assert.assertEquals(100, window.getInFlightBytes());
+
+        //A block larger than the budget is handed over alone
+        InFlightWindow small = new InFlightWindow(0, 10);
+        small.acquire(100);
+        Assert.assertEquals(1, small.getInFlight());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        InFlightWindow window = new InFlightWindow(0, 100);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        window.acquire(100);
+        window.track(0, 100, future);
+        future.completeExceptionally(new IllegalStateException("store failed"));
+        try {
+            window.await();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            window.acquire(10);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(0, window.getWatermark());
+        }
+    }
+}
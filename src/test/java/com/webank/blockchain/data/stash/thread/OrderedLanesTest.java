@@ -0,0 +1,93 @@
+package com.webank.blockchain.data.stash.thread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * OrderedLanesTest
+ *
+ * @Description: OrderedLanesTest
+ */
+public class OrderedLanesTest {
+
+    @Test
+    public void testOrderPerKey() throws Exception {
+        OrderedLanes lanes = new OrderedLanes(4, 2, "testLane");
+        Random random = new Random(3);
+        Map<String, List<Integer>> applied = new HashMap<>();
+        String[] keys = { "t_a", "t_b", "t_c", "_sys_tables_", "c_test" };
+        for (String key : keys) {
+            applied.put(key, Collections.synchronizedList(new ArrayList<>()));
+        }
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String key = keys[random.nextInt(keys.length)];
+                int sleep = random.nextInt(2);
+                int n = i;
+                futures.add(lanes.submit(key, () -> {
+                    sleep(sleep);
+                    applied.get(key).add(n);
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            int total = 0;
+            for (List<Integer> numbers : applied.values()) {
+                for (int i = 1; i < numbers.size(); i++) {
+                    Assert.assertTrue(numbers.get(i - 1) < numbers.get(i));
+                }
+                total += numbers.size();
+            }
+            Assert.assertEquals(200, total);
+            Assert.assertEquals(0, lanes.getQueueDepth());
+        } finally {
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void testKeysInParallel() throws Exception {
+        OrderedLanes lanes = new OrderedLanes(2, 4, "testLane");
+        String a = "t_a";
+        String b = "t_a";
+        for (int i = 0; lanes.lane(a) == lanes.lane(b); i++) {
+            b = "t_" + i;
+        }
+        CountDownLatch both = new CountDownLatch(2);
+        try {
+            CompletableFuture<Void> first = lanes.submit(a, () -> await(both));
+            CompletableFuture<Void> second = lanes.submit(b, () -> await(both));
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            lanes.close();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
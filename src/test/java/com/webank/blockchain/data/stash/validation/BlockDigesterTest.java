@@ -0,0 +1,140 @@
+package com.webank.blockchain.data.stash.validation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.webank.blockchain.data.stash.constants.BinlogConstants;
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+import com.webank.blockchain.data.stash.parser.BlockBytesParser;
+import com.webank.blockchain.data.stash.verify.BlockDigester;
+import com.webank.blockchain.data.stash.verify.ComparisonValidation;
+
+/**
+ * BlockDigesterTest
+ *
+ * @Description: BlockDigesterTest
+ */
+public class BlockDigesterTest {
+
+    private static final String HEADER_FIELDS = "hash,value,sigs,_status_,_num_,_id_";
+    private static final String DATA_FIELDS = "key,value,_status_,_num_,_id_";
+
+    private BlockDigester digester = new BlockDigester();
+
+    @Test
+    public void testBinlogBlocks() throws IOException {
+        byte[] binlog;
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("0.binlog")) {
+            binlog = IOUtils.toByteArray(is);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(binlog);
+        int index = BinlogConstants.BLOCK_LENGTH;
+        while (index < binlog.length) {
+            int blockLength = buffer.getInt(index);
+            byte[] block = Arrays.copyOfRange(binlog, index + 4, index + 4 + blockLength - BinlogConstants.CRC32_LENGTH);
+            Assert.assertTrue(digester.digest(ByteBuffer.wrap(block))
+                    .matches(digester.digest(ByteBuffer.wrap(block.clone()))));
+            assertAgrees(true, block, block.clone());
+            index += 4 + blockLength;
+        }
+    }
+
+    @Test
+    public void testExclusions() throws IOException {
+        //sigs of the header differ
+        assertAgrees(true, block(table("_sys_hash_2_header_", HEADER_FIELDS, entry(1, "h", "v", "s1"))),
+                block(table("_sys_hash_2_header_", HEADER_FIELDS, entry(1, "h", "v", "s2"))));
+        assertAgrees(false, block(table("_sys_hash_2_header_", HEADER_FIELDS, entry(1, "h", "v1", "s"))),
+                block(table("_sys_hash_2_header_", HEADER_FIELDS, entry(1, "h", "v2", "s"))));
+        //value of hash to block differs
+        assertAgrees(true, block(table("_sys_hash_2_block_", DATA_FIELDS, entry(1, "h", "0x1"))),
+                block(table("_sys_hash_2_block_", DATA_FIELDS, entry(1, "h", "0x2"))));
+        //ids of the tx hash table differ
+        assertAgrees(true, block(table("_sys_tx_hash_2_block_", DATA_FIELDS, entry(1, "a", "1"), entry(2, "b", "1"))),
+                block(table("_sys_tx_hash_2_block_", DATA_FIELDS, entry(5, "a", "1"), entry(6, "b", "1"))));
+        assertAgrees(false, block(table("_sys_tx_hash_2_block_", DATA_FIELDS, entry(1, "a", "1"))),
+                block(table("_sys_tx_hash_2_block_", DATA_FIELDS, entry(5, "a", "1"), entry(6, "b", "1"))));
+        //A header table with two entries never passes
+        byte[] twoHeaders = block(table("_sys_hash_2_header_", HEADER_FIELDS, entry(1, "h", "v", "s"),
+                entry(2, "h", "v", "s")));
+        assertAgrees(false, twoHeaders, twoHeaders.clone());
+    }
+
+    @Test
+    public void testEntryOrder() throws IOException {
+        assertAgrees(true, block(table("c_test", DATA_FIELDS, entry(1, "a", "1"), entry(2, "b", "2"))),
+                block(table("c_test", DATA_FIELDS, entry(2, "b", "2"), entry(1, "a", "1"))));
+        assertAgrees(false, block(table("c_test", DATA_FIELDS, entry(1, "a", "1"), entry(2, "b", "2"))),
+                block(table("c_test", DATA_FIELDS, entry(1, "a", "1"), entry(2, "b", "3"))));
+        assertAgrees(false, block(table("c_test", DATA_FIELDS, entry(1, "a", "1"))),
+                block(table("c_test", DATA_FIELDS, entry(1, "a", "1")), table("c_other", DATA_FIELDS)));
+    }
+
+    /**
+     * The digest and the full comparison must give the same result.
+     */
+    private void assertAgrees(boolean expected, byte[] block1, byte[] block2) {
+        ComparisonValidation validation = new ComparisonValidation();
+        BlockBytesParser parser = new BlockBytesParser();
+        ReflectionTestUtils.setField(validation, "parser", parser);
+        BinlogBlockInfo blockInfo = parser.getBinlogBlockInfo(block1);
+        List<ByteBuffer> blocks = Arrays.asList(ByteBuffer.wrap(block1), ByteBuffer.wrap(block2));
+        Assert.assertEquals(expected, validation.compareValidate(blockInfo, blocks));
+        Assert.assertEquals(expected, validation.digestValidate(blockInfo, blocks));
+        if (!expected) {
+            Assert.assertFalse(digester.digest(blocks.get(0)).matches(digester.digest(blocks.get(1))));
+        }
+    }
+
+    private byte[] block(byte[]... tables) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(1);
+        out.writeInt(tables.length);
+        for (byte[] table : tables) {
+            out.write(table);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] table(String name, String fields, byte[]... newEntrys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(name.length());
+        out.writeBytes(name);
+        out.writeInt(fields.length());
+        out.writeBytes(fields);
+        //no dirty entry
+        out.writeInt(0);
+        out.writeInt(newEntrys.length);
+        for (byte[] entry : newEntrys) {
+            out.write(entry);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] entry(long id, String... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(id);
+        out.writeByte(0);
+        //the leading fields are used
+        out.writeByte(0xFF << (8 - values.length));
+        for (String value : values) {
+            out.writeInt(value.length());
+            out.writeBytes(value);
+        }
+        return bytes.toByteArray();
+    }
+}
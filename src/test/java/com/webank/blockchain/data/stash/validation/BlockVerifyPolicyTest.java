@@ -0,0 +1,71 @@
+package com.webank.blockchain.data.stash.validation;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.webank.blockchain.data.stash.config.SystemPropertyConfig;
+import com.webank.blockchain.data.stash.constants.DBStaticTableConstants;
+import com.webank.blockchain.data.stash.entity.BinlogBlockInfo;
+import com.webank.blockchain.data.stash.entity.TableDataInfo;
+import com.webank.blockchain.data.stash.verify.BlockVerifyPolicy;
+
+/**
+ * BlockVerifyPolicyTest
+ *
+ * @Description: BlockVerifyPolicyTest
+ */
+public class BlockVerifyPolicyTest {
+
+    @Test
+    public void testSampling() {
+        BlockVerifyPolicy policy = policy();
+        //Startup window
+        for (long i = 1; i < 11; i++) {
+            Assert.assertTrue(policy.shouldVerify(block(i)));
+        }
+        for (long i = 11; i < 200; i++) {
+            Assert.assertEquals(i % 50 == 0, policy.shouldVerify(block(i)));
+        }
+        BinlogBlockInfo governance = block(201);
+        governance.getTables().put(DBStaticTableConstants.SYS_CONSENSUS_TABLE, new TableDataInfo());
+        Assert.assertTrue(policy.shouldVerify(governance));
+        BinlogBlockInfo bookkeeping = block(202);
+        bookkeeping.getTables().put(DBStaticTableConstants.SYS_CURRENT_STATE_TABLE, new TableDataInfo());
+        Assert.assertFalse(policy.shouldVerify(bookkeeping));
+    }
+
+    @Test
+    public void testMismatchWindow() {
+        BlockVerifyPolicy policy = policy();
+        policy.shouldVerify(block(0));
+        Assert.assertFalse(policy.shouldVerify(block(21)));
+        policy.onMismatch(21);
+        for (long i = 22; i < 32; i++) {
+            Assert.assertTrue(policy.shouldVerify(block(i)));
+        }
+        Assert.assertFalse(policy.shouldVerify(block(32)));
+        //An earlier mismatch does not shorten the window
+        policy.onMismatch(35);
+        policy.onMismatch(30);
+        Assert.assertTrue(policy.shouldVerify(block(45)));
+        Assert.assertFalse(policy.shouldVerify(block(46)));
+    }
+
+    private BlockVerifyPolicy policy() {
+        SystemPropertyConfig config = new SystemPropertyConfig();
+        config.setVerifySampling(1);
+        config.setVerifyInterval(50);
+        config.setVerifySampleRate(0);
+        config.setVerifyWindow(10);
+        BlockVerifyPolicy policy = new BlockVerifyPolicy();
+        ReflectionTestUtils.setField(policy, "config", config);
+        return policy;
+    }
+
+    private BinlogBlockInfo block(long blockNumber) {
+        BinlogBlockInfo blockInfo = new BinlogBlockInfo();
+        blockInfo.setBlockNum(blockNumber);
+        return blockInfo;
+    }
+}